@@ -3,7 +3,6 @@ package com.huawei;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 
 public class Car implements Comparable<Car> {
     private int id;
@@ -15,35 +14,31 @@ public class Car implements Comparable<Car> {
     private boolean preset;
     private ArrayList<Integer> path = new ArrayList<>();
 
-    private int currentSpeed = 0;
+    // 起终点路口的稠密下标和编译好的行程，由调度器生成；path 保留原始道路 id 用于输出
+    private int fromIdx = -1;
+    private int toIdx = -1;
+    private Itinerary itinerary = Itinerary.EMPTY;
+
     private long startTime = -1;
     private long actualStartTime = -1;
     private long endTime = -1;
-    private int laneId = -1;
-    private int roadIdx = -1;
 
-    private CarState state;
-    private int position = -1;
+    // state, position, laneId, currentSpeed, roadIdx, lane 存放在 FleetState 里，Car 只保存下标
+    private FleetState fleet;
+    private int index;
+    // 所属调度过程的全局状态
+    private SimulationContext context;
+    // 车所在的车库，不在车库里时为 null
+    private Garage garage;
 
 
     public static Comparator<Car> idComparator = Comparator.comparing(Car::getId);
 
+    // 车库的出车顺序，排序键见 Garage.keyOf
     public static Comparator<Car> priorityTimeIdComparator = new Comparator<Car>() {
         @Override
         public int compare(Car car1, Car car2) {
-            long i1;
-            long i2;
-            if (car1.isPriority())
-                i1 = (long) Math.pow(10, 8) * car1.getStartTime() + car1.getId();
-            else
-                i1 = (long) Math.pow(10, 10) * car1.getStartTime() + car1.getId();
-
-            if (car2.isPriority())
-                i2 = (long) Math.pow(10, 8) * car2.getStartTime() + car2.getId();
-            else
-                i2 = (long) Math.pow(10, 10) * car2.getStartTime() + car2.getId();
-
-            return Long.compare(i1, i2);
+            return Long.compare(Garage.keyOf(car1), Garage.keyOf(car2));
         }
     };
 
@@ -117,6 +112,7 @@ public class Car implements Comparable<Car> {
         this.planTime = planTime;
         setPriority(priority);
         this.preset = preset;
+        initFleet();
     }
 
     public Car(String line) {
@@ -128,6 +124,45 @@ public class Car implements Comparable<Car> {
         this.planTime = Integer.parseInt(vars[4]);
         setPriority(Integer.parseInt(vars[5]) == 1);
         this.preset = Integer.parseInt(vars[6]) == 1;
+        initFleet();
+    }
+
+    private void initFleet() {
+        // 加入调度器之前先放在自己的存储里
+        this.fleet = new FleetState(1);
+        this.index = fleet.register(this);
+        this.context = new SimulationContext();
+    }
+
+    // 把车的模拟字段搬到调度器的 FleetState 里，状态和车速统计记入调度器的 context
+    public void attach(FleetState target, SimulationContext context) {
+        this.context = context;
+        if (target == fleet)
+            return;
+        int idx = target.adopt(this, fleet, index);
+        this.fleet = target;
+        this.index = idx;
+    }
+
+    public FleetState getFleet() {
+        return fleet;
+    }
+
+    public SimulationContext getContext() {
+        return context;
+    }
+
+    public Garage getGarage() {
+        return garage;
+    }
+
+    public Car setGarage(Garage garage) {
+        this.garage = garage;
+        return this;
+    }
+
+    public int getIndex() {
+        return index;
     }
 
     public Car addPath(int roadId) {
@@ -143,6 +178,38 @@ public class Car implements Comparable<Car> {
         return path;
     }
 
+    public Itinerary getItinerary() {
+        return itinerary;
+    }
+
+    public Car setItinerary(Itinerary itinerary) {
+        this.itinerary = itinerary;
+        return this;
+    }
+
+    // 路径中第 i 条道路的稠密下标
+    public int getRoadIndex(int i) {
+        return itinerary.getRoad(i);
+    }
+
+    public int getPathLength() {
+        return itinerary.size();
+    }
+
+    public int getFromIndex() {
+        return fromIdx;
+    }
+
+    public int getToIndex() {
+        return toIdx;
+    }
+
+    public Car setCrossIndex(int fromIdx, int toIdx) {
+        this.fromIdx = fromIdx;
+        this.toIdx = toIdx;
+        return this;
+    }
+
     public String outputResult() {
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append("(");
@@ -197,7 +264,7 @@ public class Car implements Comparable<Car> {
 
 
     public int getCurrentSpeed() {
-        return currentSpeed;
+        return fleet.getCurrentSpeed(index);
     }
 
 
@@ -212,7 +279,7 @@ public class Car implements Comparable<Car> {
 
 
     public int getLaneId() {
-        return laneId;
+        return fleet.getLaneId(index);
     }
 
 
@@ -225,12 +292,12 @@ public class Car implements Comparable<Car> {
     }
 
     public CarState getState() {
-        return state;
+        return fleet.getState(index);
     }
 
 
     public int getPosition() {
-        return position;
+        return fleet.getPosition(index);
     }
 
     public Car setPosition(int position) {
@@ -240,7 +307,7 @@ public class Car implements Comparable<Car> {
             System.err.println("Position must greater than 0");
         }
 
-        this.position = position;
+        fleet.setPosition(index, position);
         return this;
     }
 
@@ -275,18 +342,9 @@ public class Car implements Comparable<Car> {
     }
 
     public Car setCurrentSpeed(int currentSpeed) {
-        if(Scheduler.maxSpeedOfAllCars<currentSpeed)
-            Scheduler.maxSpeedOfAllCars=currentSpeed;
-        if(Scheduler.minSpeedOfAllCars>currentSpeed)
-            Scheduler.minSpeedOfAllCars=currentSpeed;
-        if(isPriority()){
-            if(Scheduler.maxSpeedOfPriorityCars<currentSpeed)
-                Scheduler.maxSpeedOfPriorityCars=currentSpeed;
-            if(Scheduler.minSpeedOfPriorityCars>currentSpeed)
-                Scheduler.minSpeedOfPriorityCars=currentSpeed;
-        }
+        context.recordSpeed(currentSpeed, isPriority());
 
-        this.currentSpeed = currentSpeed;
+        fleet.setCurrentSpeed(index, currentSpeed);
         return this;
     }
 
@@ -301,28 +359,29 @@ public class Car implements Comparable<Car> {
     }
 
     public Car setLaneId(int laneId) {
-        this.laneId = laneId;
+        fleet.setLaneId(index, laneId);
         return this;
     }
 
-    public Car setState(CarState state) {
-        if (getState() != null && !getState().equals(state))
-            Scheduler.carStateChanged = true;
-
-        updateStateCounter(getState(), state);
+    // 车当前所在的车道，由 Lane 在放入和移除时维护
+    public Lane getLane() {
+        return fleet.getLane(index);
+    }
 
-        this.state = state;
+    public Car setLane(Lane lane) {
+        fleet.setLane(index, lane);
         return this;
     }
 
-    public void updateStateCounter(CarState original, CarState now) {
-        if (original == now)
-            return;
-        HashMap<CarState, Integer> carStateCounter = Scheduler.carStateCounter;
-
-        carStateCounter.put(now, carStateCounter.get(now) == null ? 1 : (carStateCounter.get(now) + 1));
-        carStateCounter.put(original, carStateCounter.get(original) == null ? 0 : (carStateCounter.get(original) - 1));
+    public Car setState(CarState state) {
+        context.onStateChange(this, getState(), state);
 
+        fleet.setState(index, state);
+        // 车道最后一辆车的状态决定后面的车能否出发
+        Lane lane = getLane();
+        if (lane != null && lane.getLastCar() == this)
+            lane.tailChanged();
+        return this;
     }
 
     public long getActualStartTime() {
@@ -335,151 +394,27 @@ public class Car implements Comparable<Car> {
     }
 
     public void resetCarState() {
-        this.currentSpeed = 0;
         if (!isPreset())
             this.startTime = -1;
         this.endTime = -1;
-        this.laneId = -1;
-        this.roadIdx = -1;
 
-        this.state = null;
-        this.position = -1;
+        fleet.reset(index);
     }
 
     public void rollbackCarState(long time) {
         if(!isPreset()&&getStartTime()>time){
             this.startTime=-1;
         }
-        this.currentSpeed = 0;
         this.endTime = -1;
-        this.laneId = -1;
-        this.roadIdx = -1;
-        this.state = null;
-        this.position = -1;
-    }
-
-    public CarStates dumpStates() {
-        ArrayList<Integer> carPath = new ArrayList<>(path);
-        return new CarStates(getCurrentSpeed(), getStartTime(), getEndTime(), getLaneId(), getState(), getPosition(), getId(), getRoadIdx(), carPath);
-    }
-
-    public void restoreStates(CarStates carStates) {
-        this.currentSpeed = carStates.getCurrentSpeed();
-        this.startTime = carStates.getStartTime();
-        this.endTime = carStates.getEndTime();
-        this.laneId = carStates.getLaneId();
-        this.state = carStates.getCarState();
-        this.position = carStates.getPosition();
-        this.path = carStates.getPath();
-        this.roadIdx = carStates.getRoadIdx();
-    }
-
-    public class CarStates {
-        int currentSpeed;
-        long startTime;
-        long endTime;
-        int laneId;
-        CarState carState;
-        int position;
-        int id;
-        ArrayList<Integer> path;
-        int roadIdx;
-
-        public CarStates(int currentSpeed, long startTime, long endTime, int laneId, CarState carState, int position, int id, int roadIdx, ArrayList<Integer> path) {
-            this.currentSpeed = currentSpeed;
-            this.startTime = startTime;
-            this.endTime = endTime;
-            this.laneId = laneId;
-            this.carState = carState;
-            this.position = position;
-            this.id = id;
-            this.path = path;
-            this.roadIdx = roadIdx;
-        }
-
-        public int getCurrentSpeed() {
-            return currentSpeed;
-        }
-
-        public CarStates setCurrentSpeed(int currentSpeed) {
-            this.currentSpeed = currentSpeed;
-            return this;
-        }
-
-        public long getStartTime() {
-            return startTime;
-        }
-
-        public CarStates setStartTime(long startTime) {
-            this.startTime = startTime;
-            return this;
-        }
-
-        public long getEndTime() {
-            return endTime;
-        }
-
-        public CarStates setEndTime(long endTime) {
-            this.endTime = endTime;
-            return this;
-        }
-
-        public int getLaneId() {
-            return laneId;
-        }
-
-        public CarStates setLaneId(int laneId) {
-            this.laneId = laneId;
-            return this;
-        }
-
-        public CarState getCarState() {
-            return carState;
-        }
-
-        public CarStates setCarState(CarState carState) {
-            this.carState = carState;
-            return this;
-        }
-
-        public int getPosition() {
-            return position;
-        }
-
-        public CarStates setPosition(int position) {
-            this.position = position;
-            return this;
-        }
-
-        public int getId() {
-            return id;
-        }
-
-        public CarStates setId(int id) {
-            this.id = id;
-            return this;
-        }
-
-        public ArrayList<Integer> getPath() {
-            return path;
-        }
-
-        public CarStates setPath(ArrayList<Integer> path) {
-            this.path = path;
-            return this;
-        }
-
-        public int getRoadIdx() {
-            return roadIdx;
-        }
+        fleet.reset(index);
     }
 
     public int getRoadIdx() {
-        return roadIdx;
+        return fleet.getRoadIdx(index);
     }
 
     public Car setRoadIdx(int roadIdx) {
-        this.roadIdx = roadIdx;
+        fleet.setRoadIdx(index, roadIdx);
         return this;
     }
 
@@ -488,8 +423,6 @@ public class Car implements Comparable<Car> {
     }
 
     public Car setPriority(boolean priority) {
-        if (priority)
-            Scheduler.numOfPriorityCars++;
         this.priority = priority;
         return this;
     }
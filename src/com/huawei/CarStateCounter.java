@@ -0,0 +1,98 @@
+package com.huawei;
+
+import java.util.Arrays;
+
+// 各状态的车辆数，除全部车辆外还分别统计优先车辆和预置车辆，随车辆状态变化增量维护。
+// 状态为 null (还没有放入车库) 的车也单独计数，某一类车是否都已到达只需要比较计数，不用扫描所有车辆
+public class CarStateCounter {
+
+    // 车辆类别
+    public static final int ALL = 0;
+    public static final int PRIORITY = 1;
+    public static final int PRESET = 2;
+    public static final int CLASSES = 3;
+
+    // counts[类别][状态下标]，最后一列是状态为 null 的车
+    private static final int NO_STATE = CarState.values().length;
+
+    private final int[][] counts = new int[CLASSES][NO_STATE + 1];
+
+    private static int column(CarState state) {
+        return state == null ? NO_STATE : state.ordinal();
+    }
+
+    // 车辆状态从 original 变为 now
+    public void change(Car car, CarState original, CarState now) {
+        int from = column(original);
+        int to = column(now);
+        counts[ALL][from]--;
+        counts[ALL][to]++;
+        if (car.isPriority()) {
+            counts[PRIORITY][from]--;
+            counts[PRIORITY][to]++;
+        }
+        if (car.isPreset()) {
+            counts[PRESET][from]--;
+            counts[PRESET][to]++;
+        }
+    }
+
+    public int get(int carClass, CarState state) {
+        return counts[carClass][column(state)];
+    }
+
+    // 该类别的车辆总数
+    public int total(int carClass) {
+        int total = 0;
+        for (int count : counts[carClass]) {
+            total += count;
+        }
+        return total;
+    }
+
+    // 道路上的车只在 WAIT 和 END 之间变化，总数不变，已知每一类 WAIT 的数量即可得到两者
+    public void setOnRoadCounts(int[] waiting) {
+        int wait = CarState.WAIT.ordinal();
+        int end = CarState.END.ordinal();
+        for (int c = 0; c < CLASSES; c++) {
+            int onRoad = counts[c][wait] + counts[c][end];
+            counts[c][wait] = waiting[c];
+            counts[c][end] = onRoad - waiting[c];
+        }
+    }
+
+    public void clear() {
+        for (int[] row : counts) {
+            Arrays.fill(row, 0);
+        }
+    }
+
+    // 按车辆当前状态重新统计
+    public void recount(Car[] cars) {
+        clear();
+        for (Car car : cars) {
+            change(car, null, car.getState());
+            counts[ALL][NO_STATE]++;
+            if (car.isPriority())
+                counts[PRIORITY][NO_STATE]++;
+            if (car.isPreset())
+                counts[PRESET][NO_STATE]++;
+        }
+    }
+
+    public CarStateCounter copy() {
+        CarStateCounter copy = new CarStateCounter();
+        copy.restore(this);
+        return copy;
+    }
+
+    public void restore(CarStateCounter other) {
+        for (int c = 0; c < CLASSES; c++) {
+            System.arraycopy(other.counts[c], 0, counts[c], 0, NO_STATE + 1);
+        }
+    }
+
+    public boolean sameCounts(CarStateCounter other) {
+        return Arrays.deepEquals(counts, other.counts);
+    }
+}
@@ -0,0 +1,113 @@
+package com.huawei;
+
+// 某一时刻调度结束后的状态快照：车辆可变的模拟字段和到达时间、每条车道上的车以及全局统计。
+// 快照是 Scheduler 环形队列里预先分配的槽位，保存时把字段复制进已有的数组，不再分配内存；
+// 车辆和车道引用在调度过程中不变，不放进快照。车库不在快照里，回滚时按车辆的出发时间重新放入
+public class Checkpoint {
+
+    private long time;
+    private long totalScheduleTime;
+    private long specialScheduleTime;
+    private long totalSpecialScheduleTime;
+
+    // 按车辆下标平行存放，只有前 carCount 个有效
+    private int carCount;
+    private byte[] state;
+    private int[] position;
+    private int[] laneId;
+    private int[] currentSpeed;
+    private int[] roadIdx;
+    private long[] endTime;
+
+    // 所有车道按方向下标、车道号依次排列，laneCars[laneOffsets[i]..laneOffsets[i+1]) 是第 i 条车道从前到后的车辆下标。
+    // 每辆车最多在一条车道上，laneCars 的长度与车辆数相同即可
+    private int[] laneOffsets;
+    private int[] laneCars;
+
+    public Checkpoint(int carCount, int laneCount) {
+        allocate(carCount, laneCount);
+    }
+
+    private void allocate(int carCount, int laneCount) {
+        state = new byte[carCount];
+        position = new int[carCount];
+        laneId = new int[carCount];
+        currentSpeed = new int[carCount];
+        roadIdx = new int[carCount];
+        endTime = new long[carCount];
+        laneCars = new int[carCount];
+        laneOffsets = new int[laneCount + 1];
+    }
+
+    // 用当前状态覆盖本快照
+    public void save(Scheduler scheduler) {
+        scheduler.advanceLanes();
+        SimulationContext context = scheduler.getContext();
+        time = context.getSystemScheduleTime();
+        totalScheduleTime = context.getTotalScheduleTime();
+        specialScheduleTime = context.getSpecialScheduleTime();
+        totalSpecialScheduleTime = context.getTotalSpecialScheduleTime();
+
+        FleetState fleet = scheduler.getFleet();
+        int laneCount = 0;
+        for (DirectedRoad directedRoad : scheduler.getDirectedRoads()) {
+            laneCount += directedRoad.getLanes().length;
+        }
+        // 车辆或车道的数目与分配时不同 (没有调用 initIndex) 才重新分配
+        if (fleet.size() > state.length || laneCount + 1 != laneOffsets.length)
+            allocate(Math.max(fleet.size(), state.length), laneCount);
+
+        carCount = fleet.size();
+        fleet.saveFields(state, position, laneId, currentSpeed, roadIdx);
+        Car[] cars = scheduler.getCars();
+        for (Car car : cars) {
+            endTime[car.getIndex()] = car.getEndTime();
+        }
+
+        int l = 0;
+        int c = 0;
+        for (DirectedRoad directedRoad : scheduler.getDirectedRoads()) {
+            for (Lane lane : directedRoad.getLanes()) {
+                laneOffsets[l++] = c;
+                for (int k = 0; k < lane.getCarCount(); k++) {
+                    laneCars[c++] = lane.getCarAt(k).getIndex();
+                }
+            }
+        }
+        laneOffsets[l] = c;
+    }
+
+    // 恢复车辆字段、车道和全局统计，车库清空
+    public void restore(Scheduler scheduler) {
+        scheduler.getContext().restoreTime(time, totalScheduleTime, specialScheduleTime, totalSpecialScheduleTime);
+
+        FleetState current = scheduler.getFleet();
+        if (current.size() != carCount) {
+            System.err.println("Checkpoint#restore#error: size mismatch");
+            return;
+        }
+        // 先清空车道，清空时会改动车上的车道引用
+        for (DirectedRoad directedRoad : scheduler.getDirectedRoads()) {
+            directedRoad.reset();
+        }
+        current.restoreFields(state, position, laneId, currentSpeed, roadIdx);
+        for (Car car : scheduler.getCars()) {
+            car.setEndTime(endTime[car.getIndex()]);
+        }
+
+        int l = 0;
+        for (DirectedRoad directedRoad : scheduler.getDirectedRoads()) {
+            for (Lane lane : directedRoad.getLanes()) {
+                for (int c = laneOffsets[l]; c < laneOffsets[l + 1]; c++) {
+                    int idx = laneCars[c];
+                    lane.putCar(current.getCar(idx), position[idx]);
+                }
+                l++;
+            }
+        }
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
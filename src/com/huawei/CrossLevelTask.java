@@ -0,0 +1,35 @@
+package com.huawei;
+
+import java.util.concurrent.RecursiveAction;
+
+// 并行的第二阶段：同一层的路口两两不相邻，没有共同的道路，把 level[from, to) 二分下去同时调度
+public class CrossLevelTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int GRAIN = 4;
+
+    private final Scheduler scheduler;
+    private final int[] level;
+    private final int from;
+    private final int to;
+
+    public CrossLevelTask(Scheduler scheduler, int[] level, int from, int to) {
+        this.scheduler = scheduler;
+        this.level = level;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= GRAIN) {
+            for (int i = from; i < to; i++) {
+                scheduler.scheduleCross(level[i]);
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new CrossLevelTask(scheduler, level, from, mid), new CrossLevelTask(scheduler, level, mid, to));
+    }
+}
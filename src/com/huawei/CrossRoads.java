@@ -2,17 +2,32 @@ package com.huawei;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.TreeMap;
 
 public class CrossRoads implements Comparable<CrossRoads> {
 
     private int id;
+    // 按 id 升序分配的稠密下标
+    private int index = -1;
     // 这个flag 表明该次schedule状态是否发生变化，默认是true。 每次调用schedule()就会先设false，如果有变化就设置true
     private boolean stateChanged = true;
 
     private HashMap<Integer, RoadPosition> roadDirection = new HashMap<>();
-    private TreeMap<Integer, Road> roadTreeMap = new TreeMap<>();
+    // 路口连接的道路按 id 升序排列，roadPositions[i] 是 roads[i] 的方位
+    private Road[] roads = new Road[0];
+    private RoadPosition[] roadPositions = new RoadPosition[0];
+    // inbound[i] 是 roads[i] 驶入本路口的方向，outbound[i] 是从本路口驶出的方向，没有该方向时为 null
+    private DirectedRoad[] inbound = new DirectedRoad[0];
+    private DirectedRoad[] outbound = new DirectedRoad[0];
+
+    // 载入时按 roads 的下标编译好的路口表，调度时只做数组访问:
+    // turns[i][j] 是从 roads[i] 驶入 roads[j] 的转向，straightSlot[i] 是 roads[i] 的直行对面道路 (没有为 -1)，
+    // competitors[j] 是可能有车要驶入 roads[j] 的其它驶入道路
+    private Turn[][] turns = new Turn[0][0];
+    private int[] straightSlot = new int[0];
+    private int[][] competitors = new int[0][0];
 
     public enum Turn {
         STRAIGHT, LEFT, RIGHT
@@ -54,30 +69,39 @@ public class CrossRoads implements Comparable<CrossRoads> {
         stateChanged = false;
 
         // 每个路口，升序排列。
-        for (Road road : roadTreeMap.values()) {
+        for (int i = 0; i < roads.length; i++) {
+            Road road = roads[i];
+            DirectedRoad directedRoad = inbound[i];
 
             Car car;
-            while ((car = fetchCarFromList(road)) != null) {
+            while ((car = fetchCarFromList(directedRoad)) != null) {
 
                 // 优先队列里每一辆车
-                Lane laneContainCar = road.getLaneListBy(getId()).get(car.getLaneId() - 1);
+                Lane laneContainCar = directedRoad.getLane(car.getLaneId());
 
 
+                // 车要驶入的道路在 roads 中的位置，到达终点时为 -1
+                int toSlot = car.getItinerary().getNextSlot(car.getRoadIdx());
+
                 // 车的行进方向是否有优先级
-                if (carHasPriorityToMove(car, road)) {
+                if (carHasPriorityToMove(car, i, toSlot)) {
                     //车到达目的地
                     if (carReachedDestination(car, road)) {
-                        road.updateLane(laneContainCar);
+                        directedRoad.updateLane(laneContainCar);
                         // 上路优先车辆
-                        road.runCarsInGarage(true,getId());
+                        directedRoad.runCarsInGarage(true, scheduler.getContext().getSystemScheduleTime());
+                        scheduler.markChanged(directedRoad);
                         continue;
                     }
 
                     //移车
-                    if (moveCarToNextRoad(car)) {
-                        road.updateLane(laneContainCar);
+                    DirectedRoad target = outbound[toSlot];
+                    if (moveCarToNextRoad(car, i, toSlot)) {
+                        directedRoad.updateLane(laneContainCar);
                         // 上路优先车辆
-                        road.runCarsInGarage(true,getId());
+                        directedRoad.runCarsInGarage(true, scheduler.getContext().getSystemScheduleTime());
+                        scheduler.markChanged(directedRoad);
+                        scheduler.markChanged(target);
                     } else
                         break;
 
@@ -90,20 +114,18 @@ public class CrossRoads implements Comparable<CrossRoads> {
 
     }
 
-    public Car fetchCarFromList(Road road) {
-        ArrayList<Car> carArrayList = road.getCarSequenceList(getId());
-        // 当路为单向时，查找 start端的 列表为空
-        if (carArrayList == null || carArrayList.size() == 0)
+    public Car fetchCarFromList(DirectedRoad directedRoad) {
+        // 当路为单向时，查找 start端的方向为空
+        if (directedRoad == null)
             return null;
-
-        return carArrayList.get(0);
+        return directedRoad.getFirstWaitingCar();
     }
 
     private boolean carReachedDestination(Car car, Road road) {
         // 车路径中该路的index
         int roadIdx = car.getRoadIdx();
         // 车到达目的地
-        if (roadIdx == car.getPath().size() - 1) {
+        if (roadIdx == car.getPathLength() - 1) {
             Lane lane = road.laneContainsCar(car);
 
             // 前面有车，不能到达目的地
@@ -113,70 +135,45 @@ public class CrossRoads implements Comparable<CrossRoads> {
             }
 
             car.setState(CarState.OFF_ROAD);
-            car.setEndTime(Scheduler.systemScheduleTime);
-            Scheduler.totalScheduleTime += car.getEndTime() - car.getPlanTime();
+            car.getContext().recordArrival(car);
             road.removeCarFromRoad(car, lane);
 
-            // Special schedule time
-            if (car.isPriority()) {
-                Scheduler.specialScheduleTime = Scheduler.systemScheduleTime;
-                Scheduler.totalSpecialScheduleTime += car.getEndTime() - car.getPlanTime();
-            }
-
             stateChanged = true;
             return true;
         }
         return false;
     }
 
-    private boolean carHasPriorityToMove(Car car, Road road) {
+    private boolean carHasPriorityToMove(Car car, int fromSlot, int toSlot) {
         // 车准备到达目的地
-        if (car.getRoadIdx() == car.getPath().size() - 1)
-            return checkHasPriorityToReachTheEnd(car, road);
+        if (toSlot == -1)
+            return checkHasPriorityToReachTheEnd(car, fromSlot);
         else
-            return checkHasPriorityToCross(car, road);
-    }
-
-    private boolean checkHasPriorityToCross(Car car, Road road) {
-        // 车路径中该路的index
-        int roadIdx = car.getRoadIdx();
-        int from = car.getPath().get(roadIdx);         // 车来源路的ID
-        int to = car.getPath().get(roadIdx + 1);       // 车目标路的ID
-
-        return checkConflict(car, from, to);
+            return checkConflict(car, fromSlot, toSlot);
     }
 
-    private boolean checkHasPriorityToReachTheEnd(Car car, Road road) {
+    private boolean checkHasPriorityToReachTheEnd(Car car, int fromSlot) {
         if (car.isPriority())
             return true;
 
-        int to = -1;
-
-        for (int roadId : roadTreeMap.keySet()) {
-            if (roadId != -1 && roadId != road.getId() && findDirection(road.getId(), roadId) == Turn.STRAIGHT)
-                to = roadId;
-        }
         // 没有直行方向
-        if (to == -1)
+        if (straightSlot[fromSlot] == -1)
             return true;
 
-        return checkConflict(car, road.getId(), to);
+        return checkConflict(car, fromSlot, straightSlot[fromSlot]);
     }
 
 
-    private boolean moveCarToNextRoad(Car car) {
+    private boolean moveCarToNextRoad(Car car, int fromSlot, int toSlot) {
 
-        // 车路径中该路的index
-        int roadIdx = car.getRoadIdx();
-        int from = car.getPath().get(roadIdx);                 // 车来源路的ID
-        int to = car.getPath().get(roadIdx + 1);               // 车目标路的ID
-
-        Road fromRoad = roadTreeMap.get(from);
-        Road toRoad = roadTreeMap.get(to);
-        Lane laneContainCarOnFrom = fromRoad.laneContainsCar(car);
+        Road fromRoad = roads[fromSlot];
+        DirectedRoad fromDirectedRoad = inbound[fromSlot];
+        Lane laneContainCarOnFrom = fromDirectedRoad.laneContainsCar(car);
 
         int v1 = car.getCurrentSpeed();
         int s1 = fromRoad.getLen() - car.getPosition();
+        // 放到下一条路后车的位置会变，按原来的位置从原车道移除
+        int oldPosition = car.getPosition();
 
 
         if (v1 <= s1) {
@@ -189,7 +186,7 @@ public class CrossRoads implements Comparable<CrossRoads> {
 
 
         //下一条道路可行驶的最大速度
-        int v2 = Math.min(toRoad.getTopSpeed(), car.getTopSpeed());
+        int v2 = car.getItinerary().getSpeed(car.getRoadIdx() + 1);
         // 当前道路可行驶的距离
 
         // 下一条道路可行驶的距离
@@ -208,11 +205,12 @@ public class CrossRoads implements Comparable<CrossRoads> {
                 laneContainCarOnFrom.updateCar(car, car.getPosition(), positionOnNextRoad);
             }
             car.setState(CarState.END);
+            laneContainCarOnFrom.headChanged();
             return true;
         }
 
         // 看 to road 是否全面堵塞在第一个位置
-        ArrayList<Lane> laneListOnToRoad = getLaneListFromTargetRoad(toRoad);
+        Lane[] laneListOnToRoad = outbound[toSlot].getLanes();
         for (Lane lane : laneListOnToRoad) {
             if (lane.hasPosition()) {
                 hasPosition = true;
@@ -237,6 +235,7 @@ public class CrossRoads implements Comparable<CrossRoads> {
                     laneContainCarOnFrom.updateCar(car, car.getPosition(), positionOnNextRoad);
                 }
                 car.setState(CarState.END);
+                laneContainCarOnFrom.headChanged();
                 return true;
             } else if (firstCarState == CarState.WAIT) {
                 return false;
@@ -265,8 +264,7 @@ public class CrossRoads implements Comparable<CrossRoads> {
             if (laneToPut.isEmpty()) {
                 int positionOnNextRoad = s2;
                 if (laneToPut.putCar(car, positionOnNextRoad)) {
-                    fromRoad.removeCarFromRoad(car);
-                    fromRoad.getCarSequenceList(getId()).remove(car);
+                    laneContainCarOnFrom.removeCar(oldPosition);
                     car.setCurrentSpeed(v2).setState(CarState.END).setRoadIdx(car.getRoadIdx() + 1);
                     return true;
                 } else {
@@ -281,9 +279,8 @@ public class CrossRoads implements Comparable<CrossRoads> {
                 if (frontCarPosition > s2) {
                     positionOnNextRoad = s2;
                     if (laneToPut.putCar(car, positionOnNextRoad)) {
-                        fromRoad.removeCarFromRoad(car);
-                        fromRoad.getCarSequenceList(getId()).remove(car);
-                        car.setCurrentSpeed(v2).setState(CarState.END).setRoadIdx(car.getRoadIdx() + 1);
+                        laneContainCarOnFrom.removeCar(oldPosition);
+                            car.setCurrentSpeed(v2).setState(CarState.END).setRoadIdx(car.getRoadIdx() + 1);
                         return true;
                     } else {
                         System.err.println("putCar failed");
@@ -293,9 +290,8 @@ public class CrossRoads implements Comparable<CrossRoads> {
                     positionOnNextRoad = frontCarPosition - 1;
                     if (frontCar.getState() == CarState.END) {
                         if (laneToPut.putCar(car, positionOnNextRoad)) {
-                            fromRoad.removeCarFromRoad(car);
-                            fromRoad.getCarSequenceList(getId()).remove(car);
-                            car.setCurrentSpeed(v2).setState(CarState.END).setRoadIdx(car.getRoadIdx() + 1);
+                            laneContainCarOnFrom.removeCar(oldPosition);
+                                    car.setCurrentSpeed(v2).setState(CarState.END).setRoadIdx(car.getRoadIdx() + 1);
                             return true;
                         } else {
                             System.err.println("putCar failed");
@@ -315,110 +311,106 @@ public class CrossRoads implements Comparable<CrossRoads> {
     }
 
 
-    private ArrayList<Lane> getLaneListFromTargetRoad(Road road) {
-        ArrayList<Lane> laneList;
-        if (road.isBidirectional()) {
-            if (getId() == road.getStart())
-                laneList = road.getLaneListBy(road.getEnd());
-            else
-                laneList = road.getLaneListBy(road.getStart());
-        } else
-            laneList = road.getLaneList();
-        return laneList;
-    }
-
-
-    private Turn findDirection(int from, int to) {
-        int val = getRoadDirection().get(from).ordinal() - getRoadDirection().get(to).ordinal();
-        if (Math.abs(val) == 2)
-            return Turn.STRAIGHT;
-        else if (val == -1 || val == 3)
-            return Turn.LEFT;
-        return Turn.RIGHT;
+    // 路口上下标为 roadIndex 的道路在 roads 中的位置
+    private int slotOf(int roadIndex) {
+        for (int i = 0; i < roads.length; i++) {
+            if (roads[i].getIndex() == roadIndex)
+                return i;
+        }
+        System.err.println("CrossRoads#slotOf#error: road " + roadIndex + " not on cross " + getId());
+        return -1;
     }
 
-    private boolean checkConflict(Car carToMove, int roadId, int to, Turn conflictRoadDirection, Turn conflictCarDirection) {
-        for (int otherRoadId : roadTreeMap.keySet()) {
-            if (roadId != otherRoadId && findDirection(roadId, otherRoadId) == conflictRoadDirection) {
-                Road road = roadTreeMap.get(otherRoadId);
-                Car car;
-
-                //那里没有车，可以走
-                if ((car = fetchCarFromList(road)) == null)
-                    return false;
-
-                // 车不走那条路，没有冲突
-                int roadIdx = car.getRoadIdx();
-                if ((car.getPath().size() - 1) != roadIdx && car.getPath().get(roadIdx + 1) != to) {
-                    return false;
-                }
-
-                // 优先级更高，不用管别的方向
-                if (!car.isPriority() && carToMove.isPriority())
-                    return false;
-
-                // 优先级低于那辆车，不能走
-                if (car.isPriority() && !carToMove.isPriority())
-                    return true;
-
-                // 优先级相同，需要比较
+    private boolean checkConflict(Car carToMove, int fromSlot, int toSlot) {
 
-                //同优先级直行车辆
-                if (conflictCarDirection == conflictRoadDirection)
-                    return false;
+        int other = findHighestPrioritySlot(carToMove, toSlot);
+        int maxVal = other == -1 ? -1 : calculatePriority(fetchCarFromList(inbound[other]), other, toSlot);
+        int val = calculatePriority(carToMove, fromSlot, toSlot);
 
-                // 车走那条路
-                //如果别的车更高优先级，就不可以走
-                int from = car.getPath().get(roadIdx);
-                if (findDirection(from, to) == conflictCarDirection)
-                    return true;
+        // Debug
+        if (val == maxVal)
+            System.err.println("checkConflict#error");
 
-                System.err.println("Error#");
 
-            }
-        }
-        return false;
+        return val > maxVal;
     }
 
-    private boolean checkConflict(Car carToMove, int from, int to) {
-
+    // 其它驶入道路的队首车中，要进入 roads[toSlot] 且优先级最高的车所在的驶入道路，没有则返回 -1
+    private int findHighestPrioritySlot(Car carToMove, int toSlot) {
         int maxVal = -1;
-        for (Road road : roadTreeMap.values()) {
-            Car car = fetchCarFromList(road);
+        int highest = -1;
+        for (int i : competitors[toSlot]) {
+            Car car = fetchCarFromList(inbound[i]);
             if (car != null && car != carToMove) {
-                int val = calculatePriority(car, road.getId(), to);
-                if (val > maxVal)
+                int val = calculatePriority(car, i, toSlot);
+                if (val > maxVal) {
                     maxVal = val;
+                    highest = i;
+                }
             }
         }
+        return highest;
+    }
 
-        // Debug
-        if (calculatePriority(carToMove, from, to) == maxVal)
-            System.err.println("checkConflict#error");
-
-
-        return calculatePriority(carToMove, from, to) > maxVal;
+    private Car findHighestPriorityCar(Car carToMove, int toSlot) {
+        int slot = findHighestPrioritySlot(carToMove, toSlot);
+        return slot == -1 ? null : fetchCarFromList(inbound[slot]);
     }
 
-    private int calculatePriority(Car car, int from, int roadToEnter) {
-        int val = -1;
-        Turn direction = null;
-        int to = -1;
-        if (car.getRoadIdx() == car.getPath().size() - 1) {
-            if (findDirection(from, roadToEnter) != Turn.STRAIGHT)
-                return -1;
-            else
-                to = roadToEnter;
-        } else {
-            to = car.getPath().get(car.getRoadIdx() + 1);
+    // 死锁分析用：car 是某条驶入道路等待队列的队首，返回挡住它过路口的车，可以通过时返回 null。
+    // 判断顺序与 schedule() 一致，但不改动任何状态
+    public Car findBlocker(Car car) {
+        Itinerary itinerary = car.getItinerary();
+        int roadIdx = car.getRoadIdx();
+        int fromSlot = itinerary.getFromSlot(roadIdx);
+
+        // 到达终点
+        if (itinerary.isLast(roadIdx)) {
+            if (checkHasPriorityToReachTheEnd(car, fromSlot))
+                return null;
+            return findHighestPriorityCar(car, straightSlot[fromSlot]);
         }
 
-        direction = findDirection(from, to);
+        int toSlot = itinerary.getNextSlot(roadIdx);
+        if (!checkConflict(car, fromSlot, toSlot))
+            return findHighestPriorityCar(car, toSlot);
+
+        int v2 = itinerary.getSpeed(roadIdx + 1);
+        int s2 = v2 - (roads[fromSlot].getLen() - car.getPosition());
+        // 车一定不会过马路
+        if (s2 <= 0)
+            return null;
 
+        for (Lane lane : outbound[toSlot].getLanes()) {
+            if (lane.hasPosition()) {
+                Car lastCar = lane.getLastCar();
+                if (lastCar == null || lastCar.getPosition() > s2 || lastCar.getState() != CarState.WAIT)
+                    return null;
+                return lastCar;
+            }
+            if (lane.getCar(1).getState() == CarState.WAIT)
+                return lane.getCar(1);
+        }
+        // 所有车道入口都被终止状态的车占住，车停在路口
+        return null;
+    }
 
-        if (to != roadToEnter) {
+    // 车从 roads[fromSlot] 驶入 roads[toSlot] 的优先级，不走这个方向时为 -1
+    private int calculatePriority(Car car, int fromSlot, int toSlot) {
+        Itinerary itinerary = car.getItinerary();
+        int roadIdx = car.getRoadIdx();
+        Turn direction;
+        if (itinerary.isLast(roadIdx)) {
+            // 到达终点按直行处理
+            if (turns[fromSlot][toSlot] != Turn.STRAIGHT)
+                return -1;
+            direction = Turn.STRAIGHT;
+        } else if (itinerary.getNextSlot(roadIdx) != toSlot) {
             return -1;
+        } else {
+            direction = itinerary.getTurn(roadIdx);
         }
+
         if (car.isPriority()) {
             return 100 - direction.ordinal();
         } else
@@ -426,15 +418,72 @@ public class CrossRoads implements Comparable<CrossRoads> {
     }
 
 
-    public void addRoads(TreeMap<Integer, Road> roadMap) {
-        //添加道路到路口
+    public void addRoads(Road[] roadsByIndex, IdIndex roadIndex) {
+        //添加道路到路口，按 id 升序
+        ArrayList<Road> list = new ArrayList<>();
         for (int roadId : getRoadIds()) {
             if (roadId != -1) {
-                roadTreeMap.put(roadId, roadMap.get(roadId));
+                list.add(roadsByIndex[roadIndex.indexOf(roadId)]);
+            }
+        }
+        list.sort(Comparator.comparingInt(Road::getId));
+        roads = list.toArray(new Road[0]);
+        roadPositions = new RoadPosition[roads.length];
+        inbound = new DirectedRoad[roads.length];
+        outbound = new DirectedRoad[roads.length];
+        for (int i = 0; i < roads.length; i++) {
+            roadPositions[i] = roadDirection.get(roads[i].getId());
+            inbound[i] = roads[i].getDirectedRoad(getId());
+            outbound[i] = roads[i].getDirectedRoadFrom(getId());
+        }
+        compileTables();
+    }
+
+    // 填写行程第 i 段在本路口 (该段的驶出路口) 的位置和转向
+    public void compileExit(Itinerary itinerary, int i) {
+        int fromSlot = slotOf(itinerary.getRoad(i));
+        if (itinerary.isLast(i)) {
+            itinerary.setExit(i, fromSlot, -1, Turn.STRAIGHT);
+        } else {
+            int nextSlot = slotOf(itinerary.getRoad(i + 1));
+            itinerary.setExit(i, fromSlot, nextSlot, turns[fromSlot][nextSlot]);
+        }
+    }
+
+    private void compileTables() {
+        int n = roads.length;
+        turns = new Turn[n][n];
+        straightSlot = new int[n];
+        competitors = new int[n][];
+        for (int i = 0; i < n; i++) {
+            straightSlot[i] = -1;
+            for (int j = 0; j < n; j++) {
+                int val = roadPositions[i].ordinal() - roadPositions[j].ordinal();
+                if (Math.abs(val) == 2)
+                    turns[i][j] = Turn.STRAIGHT;
+                else if (val == -1 || val == 3)
+                    turns[i][j] = Turn.LEFT;
+                else
+                    turns[i][j] = Turn.RIGHT;
+                if (i != j && turns[i][j] == Turn.STRAIGHT)
+                    straightSlot[i] = j;
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            int count = 0;
+            int[] slots = new int[n];
+            for (int i = 0; i < n; i++) {
+                if (i != j && inbound[i] != null)
+                    slots[count++] = i;
             }
+            competitors[j] = Arrays.copyOf(slots, count);
         }
     }
 
+    public Road[] getRoads() {
+        return Arrays.copyOf(roads, roads.length);
+    }
+
     public Integer[] getRoadIds() {
         return roadDirection.keySet().toArray(new Integer[roadDirection.size()]);
     }
@@ -451,6 +500,14 @@ public class CrossRoads implements Comparable<CrossRoads> {
         this.id = id;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public boolean isStateChanged() {
         return stateChanged;
     }
@@ -0,0 +1,76 @@
+package com.huawei;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// 构造等待车辆之间的等待关系并找出其中的环。
+// 每辆 WAIT 状态的车最多等一辆车：车道上的前车、同一道路等待队列的队首、路口让行的车或目标车道上挡路的车。
+// 调度在某一轮没有任何车辆状态变化时已经无法推进，此时的等待环就是死锁
+public class DeadlockDetector {
+
+    private final Scheduler scheduler;
+
+    public DeadlockDetector(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public DeadlockReport detect() {
+        Car[] cars = scheduler.getCars();
+        // 按车辆下标存放等待关系，-1 表示不在等待或等待对象未知
+        int[] waitFor = new int[cars.length];
+        DirectedRoad[] roadOf = new DirectedRoad[cars.length];
+        Arrays.fill(waitFor, -1);
+
+        int waitingCars = 0;
+        for (DirectedRoad directedRoad : scheduler.getDirectedRoads()) {
+            Car first = directedRoad.getFirstWaitingCar();
+            CrossRoads cross = scheduler.getCrossByIndex(directedRoad.getExitCrossIndex());
+            for (Lane lane : directedRoad.getLaneList()) {
+                for (int k = 0; k < lane.getCarCount(); k++) {
+                    Car car = lane.getCarAt(k);
+                    if (car.getState() != CarState.WAIT)
+                        continue;
+                    waitingCars++;
+                    roadOf[car.getIndex()] = directedRoad;
+
+                    Car blocker;
+                    if (k > 0)
+                        blocker = lane.getCarAt(k - 1);
+                    else if (car != first)
+                        blocker = first;
+                    else
+                        blocker = cross.findBlocker(car);
+                    if (blocker != null)
+                        waitFor[car.getIndex()] = blocker.getIndex();
+                }
+            }
+        }
+
+        // 每辆车至多一条出边，沿出边走即可找到所有环
+        byte[] color = new byte[cars.length];
+        ArrayList<ArrayList<Car>> cycles = new ArrayList<>();
+        for (int start = 0; start < cars.length; start++) {
+            int i = start;
+            while (i != -1 && color[i] == 0) {
+                color[i] = 1;
+                i = waitFor[i];
+            }
+            if (i != -1 && color[i] == 1) {
+                ArrayList<Car> cycle = new ArrayList<>();
+                int j = i;
+                do {
+                    cycle.add(cars[j]);
+                    j = waitFor[j];
+                } while (j != i);
+                cycles.add(cycle);
+            }
+            i = start;
+            while (i != -1 && color[i] == 1) {
+                color[i] = 2;
+                i = waitFor[i];
+            }
+        }
+
+        return new DeadlockReport(scheduler.getContext().getSystemScheduleTime(), waitingCars, cycles, roadOf);
+    }
+}
@@ -0,0 +1,73 @@
+package com.huawei;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+// 一次死锁的结果：发生时刻、等待车辆数和所有等待环，以及环上车辆所在的道路
+public class DeadlockReport {
+
+    private final long time;
+    private final int waitingCars;
+    private final List<ArrayList<Car>> cycles;
+    private final List<ArrayList<DirectedRoad>> cycleRoads = new ArrayList<>();
+
+    public DeadlockReport(long time, int waitingCars, List<ArrayList<Car>> cycles, DirectedRoad[] roadOf) {
+        this.time = time;
+        this.waitingCars = waitingCars;
+        this.cycles = cycles;
+        for (ArrayList<Car> cycle : cycles) {
+            LinkedHashSet<DirectedRoad> roads = new LinkedHashSet<>();
+            for (Car car : cycle) {
+                roads.add(roadOf[car.getIndex()]);
+            }
+            cycleRoads.add(new ArrayList<>(roads));
+        }
+    }
+
+    public void print() {
+        System.out.println("Deadlock at time " + time + " : waiting cars " + waitingCars + " cycles " + cycles.size());
+        for (int i = 0; i < cycles.size(); i++) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Cycle ").append(i + 1).append(" cars:");
+            for (Car car : cycles.get(i)) {
+                builder.append(' ').append(car.getId());
+            }
+            builder.append(" roads:");
+            for (DirectedRoad directedRoad : cycleRoads.get(i)) {
+                builder.append(" ").append(directedRoad.getRoad().getId())
+                        .append("(").append(directedRoad.getEntryCross()).append("->").append(directedRoad.getExitCross()).append(")");
+            }
+            System.out.println(builder.toString());
+        }
+    }
+
+    public boolean hasCycle() {
+        return !cycles.isEmpty();
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getWaitingCars() {
+        return waitingCars;
+    }
+
+    public List<ArrayList<Car>> getCycles() {
+        return cycles;
+    }
+
+    public List<ArrayList<DirectedRoad>> getCycleRoads() {
+        return cycleRoads;
+    }
+
+    // 所有环上的车
+    public List<Car> getCars() {
+        ArrayList<Car> list = new ArrayList<>();
+        for (ArrayList<Car> cycle : cycles) {
+            list.addAll(cycle);
+        }
+        return list;
+    }
+}
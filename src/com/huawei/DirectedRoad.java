@@ -0,0 +1,326 @@
+package com.huawei;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// 道路的一个行驶方向：从 entryCross 驶入，到 exitCross 驶出。
+// 车道、等待列表和车库在载入时就按方向分好，调度时不再按路口 id 判断方向
+public class DirectedRoad {
+
+    private final Road road;
+    // 0 驶向 end 路口, 1 驶向 start 路口
+    private final int direction;
+    private final int entryCross;
+    private final int exitCross;
+    // 驶入、驶出路口的稠密下标
+    private int entryCrossIndex = -1;
+    private int exitCrossIndex = -1;
+
+    private final Lane[] lanes;
+    private final List<Lane> laneView;
+
+    private final WaitingQueue waitingQueue;
+    private final Garage garage = new Garage(this);
+
+    // 在所有行驶方向中的稠密下标
+    private int index = -1;
+
+    public DirectedRoad(Road road, int direction, Lane[] lanes) {
+        this.road = road;
+        this.direction = direction;
+        this.entryCross = direction == 0 ? road.getStart() : road.getEnd();
+        this.exitCross = direction == 0 ? road.getEnd() : road.getStart();
+        this.lanes = lanes;
+        this.laneView = Collections.unmodifiableList(Arrays.asList(lanes));
+        this.waitingQueue = new WaitingQueue(lanes);
+        for (Lane lane : lanes) {
+            lane.setEntranceGarage(garage);
+        }
+    }
+
+    // 出发的车
+    public boolean putCarOnRoad(Car car) {
+        int sv1 = Math.min(car.getTopSpeed(), road.getTopSpeed());
+        for (Lane lane : lanes) {
+            int front = lane.getFrontCarPosition(0);
+
+            if (front != -1) {
+                if (front > 1) {
+                    // 前方有车 而且车道有位置
+                    Car frontCar = lane.getCar(front);
+                    CarState state = frontCar.getState();
+
+                    int dist = frontCar.getPosition() - 1;
+                    if (sv1 <= dist) {
+                        car.setPosition(sv1);
+                    } else {
+                        // 在进入车辆的最大可行距离内有等待车辆阻挡，不出车。
+                        if (state == CarState.WAIT)
+                            return false;
+
+                        // 前面车是处于END State
+                        car.setPosition(frontCar.getPosition() - 1);
+                    }
+                    lane.putCar(car, car.getPosition());
+                    car.setLaneId(lane.getId()).setCurrentSpeed(sv1).setState(CarState.END).setRoadIdx(0);
+                    return true;
+                } else {
+                    // 该车道已满
+                    if (lane.getCar(front).getState() == CarState.WAIT)
+                        break;
+                    else
+                        continue;
+                }
+            } else {
+                // 车可以上路，设置状态
+                if (sv1 < road.getLen()) {
+                    car.setPosition(sv1).setState(CarState.END).setLaneId(lane.getId()).setCurrentSpeed(sv1).setRoadIdx(0);
+                    lane.putCar(car, car.getPosition());
+                    return true;
+                } else {
+                    //官方论坛的人回答说不会出现这种情况
+                    System.err.println("Road#putCarOnRoad#error");
+                }
+            }
+        }
+        return false;
+    }
+
+    // 对单独车道处理
+    public void moveCarsOnLane(Lane lane) {
+        if (lane.isEmpty())
+            //车道为空 没必要继续
+            return;
+        // 确定所有车都畅行的时刻不逐辆移动，等到被读取时再推进
+        if (lane.skipFreeTick())
+            return;
+
+        // 车道按从前到后的顺序遍历，前车总是先处理
+        for (int k = 0; k < lane.getCarCount(); k++) {
+            Car car = lane.getCarAt(k);
+            int position = car.getPosition();
+            int sv1 = car.getCurrentSpeed(); // 当前车速在当前道路的最大行驶距离
+            if (k > 0) { // 前方有车
+                Car frontCar = lane.getCarAt(k - 1);
+                CarState state = frontCar.getState();
+                int dist = frontCar.getPosition() - car.getPosition() - 1;
+                if (sv1 <= dist) {
+                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
+                } else {
+                    // 会碰上车。
+                    if (state == CarState.END) {
+                        car.setPosition(frontCar.getPosition() - 1).setState(CarState.END);
+                    } else if (state == CarState.WAIT) {
+                        car.setState(CarState.WAIT);
+                    } else {
+                        System.err.println("Road#moveCarsOnRoad#error");
+                    }
+                }
+            } else {
+                // 前方没有车
+                // 需要等于
+                if (sv1 <= road.getLen() - position) {
+                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
+                } else { // 可以出路口
+                    car.setState(CarState.WAIT);
+                }
+            }
+            if (car.getPosition() != position) {
+                lane.updateCar(car, position, car.getPosition());
+            }
+        }
+        lane.headChanged();
+        lane.planFreeTicks();
+    }
+
+    // 第一阶段：所有车道上的车行驶到等待或终止状态并重建等待队列，WAIT 状态的车辆数按类别累加到 waiting。
+    // 只读写本方向的车道和车辆，不同方向之间可以并行
+    public void moveCarsOnRoad(int[] waiting) {
+        for (Lane lane : lanes) {
+            moveCarsOnLane(lane);
+            // 惰性推进中的车道上都是 END 状态的车
+            if (lane.hasPendingTicks())
+                continue;
+            for (int k = 0; k < lane.getCarCount(); k++) {
+                Car car = lane.getCarAt(k);
+                if (car.getState() != CarState.WAIT)
+                    continue;
+                waiting[CarStateCounter.ALL]++;
+                if (car.isPriority())
+                    waiting[CarStateCounter.PRIORITY]++;
+                if (car.isPreset())
+                    waiting[CarStateCounter.PRESET]++;
+            }
+        }
+        createSequenceList();
+    }
+
+    public void updateLane(Lane lane) {
+        if (lane == null) {
+            System.err.println("Road#updateLane#error");
+            System.exit(0);
+        }
+
+        if (lane.isEmpty()) {
+            //车道为空 没必要继续
+            return;
+        }
+
+        for (int k = 0; k < lane.getCarCount(); k++) {
+            Car car = lane.getCarAt(k);
+            if (car.getState() != CarState.WAIT) {
+                continue;
+            }
+            int position = car.getPosition();
+            int sv1 = car.getCurrentSpeed(); // 当前车速在当前道路的最大行驶距离
+            if (k > 0) { // 前方有车
+                Car frontCar = lane.getCarAt(k - 1);
+                CarState state = frontCar.getState();
+                int dist = frontCar.getPosition() - car.getPosition() - 1;
+                if (sv1 <= dist) {
+                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
+                } else {
+                    // 会碰上车。
+                    if (state == CarState.END) {
+                        car.setPosition(frontCar.getPosition() - 1).setState(CarState.END);
+                    } else if (state == CarState.WAIT) {
+                        car.setState(CarState.WAIT);
+                    } else {
+                        System.err.println("Road#moveCarsOnRoad#error");
+                    }
+                }
+            } else {
+                // 前方没有车
+                // 需要等于
+                if (sv1 <= road.getLen() - position) {
+                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
+                } else { // 可以出路口
+                    car.setState(CarState.WAIT);
+                }
+            }
+            if (car.getPosition() != position) {
+                lane.updateCar(car, position, car.getPosition());
+            }
+        }
+        // 头车可能从 WAIT 变为 END 而位置不变
+        lane.headChanged();
+    }
+
+    public void createSequenceList() {
+        // 车道上所有车都重新走过一遍，整体重建等待队列
+        waitingQueue.markAllChanged();
+    }
+
+    // 按过路口顺序排列的等待车辆，返回新建的列表
+    public ArrayList<Car> getCarSequenceList() {
+        return waitingQueue.toList();
+    }
+
+    // 最先过路口的等待车辆，没有则返回 null
+    public Car getFirstWaitingCar() {
+        return waitingQueue.peek();
+    }
+
+    public void addToGarage(Car car) {
+        car.setState(CarState.IN_GARAGE);
+        garage.add(car);
+    }
+
+    public void runCarsInGarage(boolean priority, long time) {
+        if (garage.isEmpty())
+            return;
+        garage.release(priority, time);
+    }
+
+    public Lane laneContainsCar(Car car) {
+        Lane lane = car.getLane();
+        if (containsLane(lane))
+            return lane;
+        System.err.println("Road#laneContainsCar#null");
+        return null;
+    }
+
+    public boolean containsLane(Lane lane) {
+        return lane != null && lane.getId() >= 1 && lane.getId() <= lanes.length && lanes[lane.getId() - 1] == lane;
+    }
+
+    public int calculateCarCount() {
+        int numberOfCar = 0;
+        for (Lane lane : lanes) {
+            numberOfCar += lane.getCarCount();
+        }
+        return numberOfCar;
+    }
+
+    public void reset() {
+        for (Lane lane : lanes) {
+            lane.clear();
+        }
+        waitingQueue.markAllChanged();
+        garage.clear();
+    }
+
+    public Road getRoad() {
+        return road;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public int getEntryCross() {
+        return entryCross;
+    }
+
+    public int getExitCross() {
+        return exitCross;
+    }
+
+    public int getEntryCrossIndex() {
+        return entryCrossIndex;
+    }
+
+    public int getExitCrossIndex() {
+        return exitCrossIndex;
+    }
+
+    public void setCrossIndex(int entryCrossIndex, int exitCrossIndex) {
+        this.entryCrossIndex = entryCrossIndex;
+        this.exitCrossIndex = exitCrossIndex;
+    }
+
+    // laneId 从 1 开始
+    public Lane getLane(int laneId) {
+        return lanes[laneId - 1];
+    }
+
+    public List<Lane> getLaneList() {
+        return laneView;
+    }
+
+    // 推进所有车道上累计的畅行时刻，之后车辆记录的位置都是当前位置
+    public void advanceLanes() {
+        for (Lane lane : lanes) {
+            lane.advancePending();
+        }
+    }
+
+    public Garage getGarage() {
+        return garage;
+    }
+
+    // 调度热路径上用数组遍历车道，不创建迭代器。调用者不能修改数组
+    public Lane[] getLanes() {
+        return lanes;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+}
@@ -0,0 +1,189 @@
+package com.huawei;
+
+import java.util.Arrays;
+
+public class FleetState {
+
+    private static final CarState[] STATES = CarState.values();
+    private static final byte NO_STATE = -1;
+
+    private int size = 0;
+
+    // 车辆模拟时频繁读写的字段，按车辆下标平行存放
+    private Car[] cars;
+    private byte[] state;
+    private int[] position;
+    private int[] laneId;
+    private int[] currentSpeed;
+    private int[] roadIdx;
+    // 车当前所在的车道，不在道路上时为 null
+    private Lane[] lane;
+
+    public FleetState(int capacity) {
+        capacity = Math.max(capacity, 1);
+        cars = new Car[capacity];
+        state = new byte[capacity];
+        position = new int[capacity];
+        laneId = new int[capacity];
+        currentSpeed = new int[capacity];
+        roadIdx = new int[capacity];
+        lane = new Lane[capacity];
+    }
+
+    // 分配一个新的车辆下标，字段为车辆的初始状态
+    public int register(Car car) {
+        if (size == cars.length)
+            grow();
+        int idx = size++;
+        cars[idx] = car;
+        reset(idx);
+        return idx;
+    }
+
+    // 把车从原来的存储搬到本存储，返回新的下标
+    public int adopt(Car car, FleetState from, int fromIdx) {
+        int idx = register(car);
+        state[idx] = from.state[fromIdx];
+        position[idx] = from.position[fromIdx];
+        laneId[idx] = from.laneId[fromIdx];
+        currentSpeed[idx] = from.currentSpeed[fromIdx];
+        roadIdx[idx] = from.roadIdx[fromIdx];
+        lane[idx] = from.lane[fromIdx];
+        return idx;
+    }
+
+    // 复制当前所有车辆的模拟字段，车辆对象本身共用
+    public FleetState copy() {
+        FleetState copy = new FleetState(size);
+        copy.size = size;
+        System.arraycopy(cars, 0, copy.cars, 0, size);
+        copyFields(this, copy);
+        return copy;
+    }
+
+    // 用快照覆盖当前的模拟字段，两者的车辆下标必须一致
+    public void restore(FleetState snapshot) {
+        if (snapshot.size != size) {
+            System.err.println("FleetState#restore#error: size mismatch");
+            return;
+        }
+        copyFields(snapshot, this);
+    }
+
+    private static void copyFields(FleetState from, FleetState to) {
+        System.arraycopy(from.state, 0, to.state, 0, from.size);
+        System.arraycopy(from.position, 0, to.position, 0, from.size);
+        System.arraycopy(from.laneId, 0, to.laneId, 0, from.size);
+        System.arraycopy(from.currentSpeed, 0, to.currentSpeed, 0, from.size);
+        System.arraycopy(from.roadIdx, 0, to.roadIdx, 0, from.size);
+        System.arraycopy(from.lane, 0, to.lane, 0, from.size);
+    }
+
+    // 把可变的模拟字段复制到调用者的数组里，数组长度不能小于 size()。车辆和车道引用不复制
+    public void saveFields(byte[] state, int[] position, int[] laneId, int[] currentSpeed, int[] roadIdx) {
+        System.arraycopy(this.state, 0, state, 0, size);
+        System.arraycopy(this.position, 0, position, 0, size);
+        System.arraycopy(this.laneId, 0, laneId, 0, size);
+        System.arraycopy(this.currentSpeed, 0, currentSpeed, 0, size);
+        System.arraycopy(this.roadIdx, 0, roadIdx, 0, size);
+    }
+
+    // 用 saveFields 保存的字段覆盖当前的模拟字段。车道引用全部清空，由调用者把车放回车道时重新设置
+    public void restoreFields(byte[] state, int[] position, int[] laneId, int[] currentSpeed, int[] roadIdx) {
+        System.arraycopy(state, 0, this.state, 0, size);
+        System.arraycopy(position, 0, this.position, 0, size);
+        System.arraycopy(laneId, 0, this.laneId, 0, size);
+        System.arraycopy(currentSpeed, 0, this.currentSpeed, 0, size);
+        System.arraycopy(roadIdx, 0, this.roadIdx, 0, size);
+        Arrays.fill(lane, 0, size, null);
+    }
+
+    // 两份存储的模拟字段是否完全相同
+    public boolean sameState(FleetState other) {
+        if (other.size != size)
+            return false;
+        for (int i = 0; i < size; i++) {
+            if (state[i] != other.state[i] || position[i] != other.position[i] || laneId[i] != other.laneId[i]
+                    || currentSpeed[i] != other.currentSpeed[i] || roadIdx[i] != other.roadIdx[i] || lane[i] != other.lane[i])
+                return false;
+        }
+        return true;
+    }
+
+    public void reset(int idx) {
+        state[idx] = NO_STATE;
+        position[idx] = -1;
+        laneId[idx] = -1;
+        currentSpeed[idx] = 0;
+        roadIdx[idx] = -1;
+        lane[idx] = null;
+    }
+
+    private void grow() {
+        int capacity = cars.length * 2;
+        cars = Arrays.copyOf(cars, capacity);
+        state = Arrays.copyOf(state, capacity);
+        position = Arrays.copyOf(position, capacity);
+        laneId = Arrays.copyOf(laneId, capacity);
+        currentSpeed = Arrays.copyOf(currentSpeed, capacity);
+        roadIdx = Arrays.copyOf(roadIdx, capacity);
+        lane = Arrays.copyOf(lane, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Car getCar(int idx) {
+        return cars[idx];
+    }
+
+    public CarState getState(int idx) {
+        byte s = state[idx];
+        return s == NO_STATE ? null : STATES[s];
+    }
+
+    public void setState(int idx, CarState carState) {
+        state[idx] = carState == null ? NO_STATE : (byte) carState.ordinal();
+    }
+
+    public int getPosition(int idx) {
+        return position[idx];
+    }
+
+    public void setPosition(int idx, int value) {
+        position[idx] = value;
+    }
+
+    public int getLaneId(int idx) {
+        return laneId[idx];
+    }
+
+    public void setLaneId(int idx, int value) {
+        laneId[idx] = value;
+    }
+
+    public int getCurrentSpeed(int idx) {
+        return currentSpeed[idx];
+    }
+
+    public void setCurrentSpeed(int idx, int value) {
+        currentSpeed[idx] = value;
+    }
+
+    public int getRoadIdx(int idx) {
+        return roadIdx[idx];
+    }
+
+    public void setRoadIdx(int idx, int value) {
+        roadIdx[idx] = value;
+    }
+
+    public Lane getLane(int idx) {
+        return lane[idx];
+    }
+
+    public void setLane(int idx, Lane value) {
+        lane[idx] = value;
+    }
+}
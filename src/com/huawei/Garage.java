@@ -0,0 +1,231 @@
+package com.huawei;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// 一个行驶方向的车库。还没到出发时间的车按出发时间放在日历桶里，时间到了才并入 ready；
+// ready 按 keyOf 升序排列，即 Car.priorityTimeIdComparator 的顺序，出车时只扫描 ready
+public class Garage {
+
+    private final DirectedRoad road;
+
+    // calendar.get(t) 是出发时间为 t 且尚未并入 ready 的车
+    private final ArrayList<ArrayList<Car>> calendar = new ArrayList<>();
+    // 出发时间不超过 promoted 的桶都已经并入 ready
+    private long promoted = -1;
+
+    private Car[] ready = new Car[16];
+    private long[] readyKey = new long[16];
+    private int readySize = 0;
+
+    private int size = 0;
+
+    // 上一次出车扫描没有任何车上路，之后入口处的车道没有变化、也没有新车放入时，同一时刻再扫描结果不变，直接跳过。
+    // 优先模式只扫描了优先车辆，不能代替完整的扫描
+    private boolean parked = false;
+    private long parkedTime;
+    private boolean parkedPriorityOnly;
+
+    public Garage(DirectedRoad road) {
+        this.road = road;
+    }
+
+    // 优先车辆 10^8 * 出发时间 + id，其它车辆 10^10 * 出发时间 + id
+    public static long keyOf(Car car) {
+        if (car.isPriority())
+            return 100000000L * car.getStartTime() + car.getId();
+        return 10000000000L * car.getStartTime() + car.getId();
+    }
+
+    public boolean contains(Car car) {
+        return car.getGarage() == this;
+    }
+
+    // 车的出发时间要在放入之前设置好，已经在车库里时不重复放入
+    public boolean add(Car car) {
+        if (contains(car))
+            return false;
+        car.setGarage(this);
+        size++;
+        parked = false;
+        long startTime = car.getStartTime();
+        if (startTime <= promoted) {
+            insertReady(car, keyOf(car));
+            return true;
+        }
+        int t = (int) startTime;
+        while (calendar.size() <= t) {
+            calendar.add(null);
+        }
+        if (calendar.get(t) == null)
+            calendar.set(t, new ArrayList<>());
+        calendar.get(t).add(car);
+        return true;
+    }
+
+    // 把出发时间不超过 time 的桶并入 ready
+    private void promote(long time) {
+        if (time <= promoted)
+            return;
+        long last = Math.min(time, calendar.size() - 1L);
+        for (long t = promoted + 1; t <= last; t++) {
+            ArrayList<Car> bucket = calendar.get((int) t);
+            if (bucket == null)
+                continue;
+            calendar.set((int) t, null);
+            mergeReady(bucket);
+        }
+        promoted = time;
+    }
+
+    // 按顺序尝试让出发时间已到的车上路，priority 为 true 时遇到第一辆非优先车辆就停止
+    public void release(boolean priority, long time) {
+        if (parked && parkedTime == time && (priority || !parkedPriorityOnly))
+            return;
+        promote(time);
+        int write = 0;
+        int k = 0;
+        for (; k < readySize; k++) {
+            Car car = ready[k];
+            if (car.getState() != CarState.IN_GARAGE) {
+                System.err.println("ERROR: 车库里出现错误状态的车。" + car.getId() + " state " + car.getState());
+            }
+
+            // 仅允许高优先级的车出发
+            if (priority) {
+                //优先的车总是排在最前面，所以可以直接break，优化时间复杂度
+                if (!car.isPriority())
+                    break;
+            }
+            if (car.getStartTime() <= time && road.putCarOnRoad(car)) {
+                // 上路成功,从车库中删除车辆。否则车等待下一时刻才开。
+                car.setActualStartTime(time);
+                car.setGarage(null);
+                size--;
+                continue;
+            }
+            ready[write] = car;
+            readyKey[write] = readyKey[k];
+            write++;
+        }
+        parked = write == k;
+        parkedTime = time;
+        parkedPriorityOnly = priority;
+        if (write == k)
+            return;
+        // 没有扫描到的车整体前移
+        int rest = readySize - k;
+        System.arraycopy(ready, k, ready, write, rest);
+        System.arraycopy(readyKey, k, readyKey, write, rest);
+        Arrays.fill(ready, write + rest, readySize, null);
+        readySize = write + rest;
+    }
+
+    public void clear() {
+        for (int k = 0; k < readySize; k++) {
+            ready[k].setGarage(null);
+        }
+        for (ArrayList<Car> bucket : calendar) {
+            if (bucket == null)
+                continue;
+            for (Car car : bucket) {
+                car.setGarage(null);
+            }
+        }
+        calendar.clear();
+        Arrays.fill(ready, 0, readySize, null);
+        readySize = 0;
+        promoted = -1;
+        size = 0;
+        parked = false;
+    }
+
+    // 入口处某条车道的最后一辆车发生了变化，等待出发的车可能可以上路了
+    public void entranceChanged() {
+        parked = false;
+    }
+
+    // 车库中最早的出发时间，车库为空时返回 Long.MAX_VALUE
+    public long nextStartTime() {
+        long earliest = Long.MAX_VALUE;
+        // ready 按优先级和出发时间混合排序，不能只看第一辆
+        for (int k = 0; k < readySize; k++) {
+            earliest = Math.min(earliest, ready[k].getStartTime());
+        }
+        if (earliest != Long.MAX_VALUE)
+            return earliest;
+        for (long t = promoted + 1; t < calendar.size(); t++) {
+            if (calendar.get((int) t) != null)
+                return t;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void insertReady(Car car, long key) {
+        ensureCapacity(readySize + 1);
+        // 插在相同键的车后面，保持放入的先后顺序
+        int lo = 0;
+        int hi = readySize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readyKey[mid] <= key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        System.arraycopy(ready, lo, ready, lo + 1, readySize - lo);
+        System.arraycopy(readyKey, lo, readyKey, lo + 1, readySize - lo);
+        ready[lo] = car;
+        readyKey[lo] = key;
+        readySize++;
+    }
+
+    private void mergeReady(ArrayList<Car> bucket) {
+        // 同一个桶里的车出发时间相同，排序后与 ready 归并
+        bucket.sort(Car.priorityTimeIdComparator);
+        int m = bucket.size();
+        if (m == 0)
+            return;
+
+        ensureCapacity(readySize + m);
+        // 从后往前归并
+        int i = readySize - 1;
+        int j = m - 1;
+        int w = readySize + m - 1;
+        Car car = bucket.get(j);
+        long key = keyOf(car);
+        while (j >= 0) {
+            if (i >= 0 && readyKey[i] > key) {
+                ready[w] = ready[i];
+                readyKey[w] = readyKey[i];
+                i--;
+            } else {
+                ready[w] = car;
+                readyKey[w] = key;
+                j--;
+                if (j >= 0) {
+                    car = bucket.get(j);
+                    key = keyOf(car);
+                }
+            }
+            w--;
+        }
+        readySize += m;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ready.length)
+            return;
+        int newCapacity = Math.max(capacity, ready.length * 2);
+        ready = Arrays.copyOf(ready, newCapacity);
+        readyKey = Arrays.copyOf(readyKey, newCapacity);
+    }
+}
@@ -0,0 +1,32 @@
+package com.huawei;
+
+import java.util.Arrays;
+
+// 把 road.txt / cross.txt / car.txt 里稀疏的 id 映射为 0..N-1 的稠密下标，下标按 id 升序分配
+public class IdIndex {
+
+    private final int[] ids;
+
+    public IdIndex(int[] rawIds) {
+        ids = rawIds.clone();
+        Arrays.sort(ids);
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] == ids[i - 1])
+                System.err.println("IdIndex#error: duplicated id " + ids[i]);
+        }
+    }
+
+    // 没有该 id 时返回 -1
+    public int indexOf(int id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i < 0 ? -1 : i;
+    }
+
+    public int idOf(int index) {
+        return ids[index];
+    }
+
+    public int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,77 @@
+package com.huawei;
+
+// 车辆出发前由调度器把路径编译成的行程，第 i 段是路径中的第 i 条道路:
+// 行驶方向、驶出路口、该道路和下一条道路在驶出路口中的位置、在驶出路口的转向 (最后一段按直行) 以及该段的限速
+public class Itinerary {
+
+    public static final Itinerary EMPTY = new Itinerary(0);
+
+    private final int[] roads;
+    private final int[] directedRoads;
+    private final int[] exitCrosses;
+    private final int[] fromSlots;
+    private final int[] nextSlots;
+    private final CrossRoads.Turn[] turns;
+    private final int[] speeds;
+
+    public Itinerary(int size) {
+        roads = new int[size];
+        directedRoads = new int[size];
+        exitCrosses = new int[size];
+        fromSlots = new int[size];
+        nextSlots = new int[size];
+        turns = new CrossRoads.Turn[size];
+        speeds = new int[size];
+    }
+
+    void setHop(int i, int road, int directedRoad, int exitCross, int speed) {
+        roads[i] = road;
+        directedRoads[i] = directedRoad;
+        exitCrosses[i] = exitCross;
+        speeds[i] = speed;
+    }
+
+    void setExit(int i, int fromSlot, int nextSlot, CrossRoads.Turn turn) {
+        fromSlots[i] = fromSlot;
+        nextSlots[i] = nextSlot;
+        turns[i] = turn;
+    }
+
+    public int size() {
+        return roads.length;
+    }
+
+    public boolean isLast(int i) {
+        return i == roads.length - 1;
+    }
+
+    // 道路的稠密下标
+    public int getRoad(int i) {
+        return roads[i];
+    }
+
+    public int getDirectedRoad(int i) {
+        return directedRoads[i];
+    }
+
+    public int getExitCross(int i) {
+        return exitCrosses[i];
+    }
+
+    public int getFromSlot(int i) {
+        return fromSlots[i];
+    }
+
+    // 最后一段为 -1
+    public int getNextSlot(int i) {
+        return nextSlots[i];
+    }
+
+    public CrossRoads.Turn getTurn(int i) {
+        return turns[i];
+    }
+
+    public int getSpeed(int i) {
+        return speeds[i];
+    }
+}
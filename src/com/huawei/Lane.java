@@ -1,25 +1,78 @@
 package com.huawei;
 
 import java.util.ArrayList;
-import java.util.TreeMap;
 
 public class Lane {
 
-    private TreeMap<Integer, Car> carMap = new TreeMap<>();
+    // 车道上不会超车，所以车按从前到后的顺序存放在环形队列里，ring[head] 是最前面的车
+    private Car[] ring;
+    private int[] ringPosition;
+    private int head = 0;
+    private int size = 0;
+
+    // 按位置索引: slots[position] 是该位置上的车，ringIndex[position] 是这辆车在环形队列里的下标
+    private Car[] slots;
+    private int[] ringIndex;
+
     private int id;
     private int length;
 
+    // 头车变化时通知所在方向的等待队列
+    private WaitingQueue waitingQueue;
+    private int queueSlot;
+    // 最后一辆车 (离入口最近) 变化时通知所在方向的车库，出车只取决于各车道的最后一辆车
+    private Garage entranceGarage;
+
+    // 畅行车道的惰性推进：freeTicks 是之后可以确定所有车都不受前车阻挡、也不会到达车道末端的时刻数，
+    // 这些时刻的第一阶段只累计在 pendingTicks 里，车的位置在被读取或车道被修改时才一次推进到位
+    private int freeTicks = 0;
+    private int pendingTicks = 0;
+
     public Lane(int id, int length) {
         this.id = id;
         this.length = length;
+        initSlots();
     }
 
-    public TreeMap<Integer, Car> getCarMap() {
-        return carMap;
+    private void initSlots() {
+        ring = new Car[length + 1];
+        ringPosition = new int[length + 1];
+        slots = new Car[length + 1];
+        ringIndex = new int[length + 1];
+        head = 0;
+        size = 0;
     }
 
     public Car getCar(int position) {
-        return carMap.get(position);
+        advancePending();
+        if (position < 0 || position > length)
+            return null;
+        return slots[position];
+    }
+
+    // 第 k 辆车，0 为最前面的车
+    public Car getCarAt(int k) {
+        advancePending();
+        return ring[physical(k)];
+    }
+
+    public Car getFirstCar() {
+        advancePending();
+        return size == 0 ? null : ring[head];
+    }
+
+    public Car getLastCar() {
+        advancePending();
+        return size == 0 ? null : ring[physical(size - 1)];
+    }
+
+    public int getCarCount() {
+        return size;
+    }
+
+    // 车辆记录着自己所在的车道，O(1)
+    public boolean containsCar(Car car) {
+        return car.getLane() == this;
     }
 
     public boolean putCar(Car car, int position) {
@@ -27,54 +80,329 @@ public class Lane {
             System.err.println("Lane#putCar#error: Car out of position.");
             return false;
         }
-        carMap.put(position, car);
+        advancePending();
+        freeTicks = 0;
+        if (slots[position] != null)
+            removeAt(ringIndex[position]);
+
+        // 新车总是排在最后一辆车的后面
+        if (size == 0 || ringPosition[physical(size - 1)] > position) {
+            if (size == 0)
+                headChanged();
+            int phys = physical(size);
+            ring[phys] = car;
+            ringPosition[phys] = position;
+            ringIndex[position] = phys;
+            size++;
+        } else {
+            insertOrdered(car, position);
+        }
+        slots[position] = car;
+        if (getLastCar() == car)
+            tailChanged();
 
         //将车放入车道时设置lane id
-        car.setLaneId(getId());
+        car.setLaneId(getId()).setLane(this);
         car.setPosition(position);
         return true;
     }
 
     public boolean removeCar(int position) {
-        if (carMap.get(position) == null) {
+        advancePending();
+        freeTicks = 0;
+        if (getCar(position) == null) {
+            System.err.println("Lane#removeCar#error: delete failed");
+            return false;
+        }
+        removeAt(ringIndex[position]);
+        return true;
+    }
+
+    public boolean removeCar(Car car) {
+        advancePending();
+        int position = car.getPosition();
+        if (getCar(position) == car)
+            return removeCar(position);
+        int k = indexOf(car);
+        if (k == -1) {
             System.err.println("Lane#removeCar#error: delete failed");
             return false;
         }
-        carMap.remove(position);
+        removeAt(physical(k));
         return true;
     }
 
     public boolean updateCar(Car car, int oldPosition, int newPosition) {
-        if (carMap.get(newPosition) != null && oldPosition != newPosition) {
+        advancePending();
+        freeTicks = 0;
+        if (getCar(newPosition) != null && oldPosition != newPosition) {
             System.err.println("Lane#updateCar#error: Override another car");
             return false;
         }
-        if (removeCar(oldPosition)) {
+        if (getCar(oldPosition) == null) {
+            System.err.println("Lane#removeCar#error: delete failed");
+            return false;
+        }
+        if (newPosition > length) {
+            System.err.println("Lane#putCar#error: Car out of position.");
+            removeAt(ringIndex[oldPosition]);
+            return false;
+        }
+
+        int phys = ringIndex[oldPosition];
+        int k = logical(phys);
+        boolean keepOrder = (k == 0 || ringPosition[physical(k - 1)] > newPosition)
+                && (k == size - 1 || ringPosition[physical(k + 1)] < newPosition);
+        if (!keepOrder) {
+            removeAt(phys);
             return putCar(car, newPosition);
         }
-        return false;
+
+        // 车的先后顺序不变，只需要挪动位置索引
+        if (k == 0)
+            headChanged();
+        if (k == size - 1)
+            tailChanged();
+        slots[oldPosition] = null;
+        slots[newPosition] = car;
+        ringPosition[phys] = newPosition;
+        ringIndex[newPosition] = phys;
+        car.setLaneId(getId()).setLane(this);
+        car.setPosition(newPosition);
+        return true;
     }
 
     public int getFrontCarPosition(int position) {
         // 若没有前车,返回-1
-        Integer front = carMap.descendingKeySet().lower(position);
-        if (front != null)
-            return front;
+        advancePending();
+        if (position >= 0 && position <= length && slots[position] != null) {
+            int k = logical(ringIndex[position]);
+            if (k > 0)
+                return ringPosition[physical(k - 1)];
+            return -1;
+        }
+        // 该位置没有车，从后往前找第一辆在它前面的车
+        for (int k = size - 1; k >= 0; k--) {
+            if (ringPosition[physical(k)] > position)
+                return ringPosition[physical(k)];
+        }
         return -1;
     }
 
     public ArrayList<Integer> getDescendingPositionList() {
-        return new ArrayList<Integer>(carMap.descendingKeySet());
+        advancePending();
+        ArrayList<Integer> list = new ArrayList<>(size);
+        for (int k = 0; k < size; k++) {
+            list.add(ringPosition[physical(k)]);
+        }
+        return list;
+    }
+
+    // 清空车道上的所有车
+    public void clear() {
+        for (int k = 0; k < size; k++) {
+            detach(ring[physical(k)]);
+        }
+        initSlots();
+        // 车辆的位置已经由调用者另行设置，未推进的时刻直接丢弃
+        freeTicks = 0;
+        pendingTicks = 0;
+        headChanged();
+        tailChanged();
+    }
+
+    public void setWaitingQueue(WaitingQueue waitingQueue, int slot) {
+        this.waitingQueue = waitingQueue;
+        this.queueSlot = slot;
+    }
+
+    // 头车本身、头车位置或头车状态发生了变化
+    public void headChanged() {
+        if (waitingQueue != null)
+            waitingQueue.laneChanged(queueSlot);
+    }
+
+    public void setEntranceGarage(Garage entranceGarage) {
+        this.entranceGarage = entranceGarage;
+    }
+
+    // 最后一辆车本身、它的位置或状态发生了变化
+    public void tailChanged() {
+        if (entranceGarage != null)
+            entranceGarage.entranceChanged();
+    }
+
+    // 本时刻所有车都确定畅行时不逐辆移动，只记下一个未推进的时刻。车道最前和最后的车都移动了
+    public boolean skipFreeTick() {
+        if (freeTicks == 0 || size == 0)
+            return false;
+        freeTicks--;
+        pendingTicks++;
+        headChanged();
+        tailChanged();
+        return true;
+    }
+
+    public boolean hasPendingTicks() {
+        return pendingTicks > 0;
+    }
+
+    // 第一阶段移动完后计算之后还能畅行几个时刻：所有车都是 END 状态，头车每个时刻前进 speed 不超过车道末端，
+    // 比前车快的车追上前车之前，它们都按当前车速前进，与逐个时刻移动的结果相同
+    public void planFreeTicks() {
+        freeTicks = 0;
+        int ticks = Integer.MAX_VALUE;
+        for (int k = 0; k < size; k++) {
+            int phys = physical(k);
+            Car car = ring[phys];
+            if (car.getState() != CarState.END)
+                return;
+            int speed = car.getCurrentSpeed();
+            if (k == 0) {
+                ticks = (length - ringPosition[phys]) / speed;
+            } else {
+                int front = physical(k - 1);
+                int frontSpeed = ring[front].getCurrentSpeed();
+                if (speed > frontSpeed)
+                    ticks = Math.min(ticks, (ringPosition[front] - ringPosition[phys] - 1) / (speed - frontSpeed));
+            }
+            if (ticks == 0)
+                return;
+        }
+        if (size > 0)
+            freeTicks = ticks;
+    }
+
+    // 把累计的畅行时刻一次推进到位。从前往后移动，前车先离开原来的位置，不会覆盖还没移动的车
+    public void advancePending() {
+        if (pendingTicks == 0)
+            return;
+        int ticks = pendingTicks;
+        pendingTicks = 0;
+        for (int k = 0; k < size; k++) {
+            int phys = physical(k);
+            Car car = ring[phys];
+            int position = ringPosition[phys] + ticks * car.getCurrentSpeed();
+            slots[ringPosition[phys]] = null;
+            slots[position] = car;
+            ringPosition[phys] = position;
+            ringIndex[position] = phys;
+            car.setPosition(position);
+        }
     }
 
     public boolean hasPosition() {
-        return carMap.get(1)==null;
+        advancePending();
+        return slots[1] == null;
     }
 
     public boolean isEmpty() {
-        return carMap.size() == 0;
+        return size == 0;
     }
 
+    private int physical(int k) {
+        int phys = head + k;
+        return phys >= ring.length ? phys - ring.length : phys;
+    }
+
+    private int logical(int phys) {
+        int k = phys - head;
+        return k < 0 ? k + ring.length : k;
+    }
+
+    private int indexOf(Car car) {
+        for (int k = 0; k < size; k++) {
+            if (ring[physical(k)] == car)
+                return k;
+        }
+        return -1;
+    }
+
+    private void removeAt(int phys) {
+        detach(ring[phys]);
+        slots[ringPosition[phys]] = null;
+        int k = logical(phys);
+        if (k == size - 1)
+            tailChanged();
+        if (k == 0) {
+            // 最前面的车离开车道，O(1)
+            headChanged();
+            ring[head] = null;
+            head = physical(1);
+            size--;
+            return;
+        }
+        // 非头车，后面的车依次前移
+        for (int i = k; i < size - 1; i++) {
+            int to = physical(i);
+            int from = physical(i + 1);
+            ring[to] = ring[from];
+            ringPosition[to] = ringPosition[from];
+            ringIndex[ringPosition[to]] = to;
+        }
+        ring[physical(size - 1)] = null;
+        size--;
+    }
+
+    // 车已经被放到别的车道上时不改动它的记录
+    private void detach(Car car) {
+        if (car.getLane() == this)
+            car.setLane(null);
+    }
+
+    // 检查环形队列、位置索引和车辆记录是否一致，有问题时输出并返回 false
+    public boolean checkConsistency() {
+        advancePending();
+        boolean ok = true;
+        int count = 0;
+        for (int position = 0; position <= length; position++) {
+            if (slots[position] != null)
+                count++;
+        }
+        if (count != size) {
+            System.err.println("Lane#checkConsistency#error: " + count + " slots for " + size + " cars");
+            ok = false;
+        }
+        for (int k = 0; k < size; k++) {
+            int phys = physical(k);
+            Car car = ring[phys];
+            int position = ringPosition[phys];
+            if (slots[position] != car || ringIndex[position] != phys) {
+                System.err.println("Lane#checkConsistency#error: position index of car " + car.getId());
+                ok = false;
+            }
+            if (k > 0 && ringPosition[physical(k - 1)] <= position) {
+                System.err.println("Lane#checkConsistency#error: car " + car.getId() + " out of order");
+                ok = false;
+            }
+            if (car.getLane() != this || car.getLaneId() != id || car.getPosition() != position) {
+                System.err.println("Lane#checkConsistency#error: car " + car.getId() + " records lane " + car.getLaneId() + " position " + car.getPosition());
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    private void insertOrdered(Car car, int position) {
+        int k = size;
+        while (k > 0 && ringPosition[physical(k - 1)] < position) {
+            k--;
+        }
+        if (k == 0)
+            headChanged();
+        for (int i = size; i > k; i--) {
+            int to = physical(i);
+            int from = physical(i - 1);
+            ring[to] = ring[from];
+            ringPosition[to] = ringPosition[from];
+            ringIndex[ringPosition[to]] = to;
+        }
+        int phys = physical(k);
+        ring[phys] = car;
+        ringPosition[phys] = position;
+        ringIndex[position] = phys;
+        size++;
+    }
 
     public int getId() {
         return id;
@@ -90,6 +418,7 @@ public class Lane {
 
     public Lane setLength(int length) {
         this.length = length;
+        initSlots();
         return this;
     }
 }
@@ -14,6 +14,10 @@ public class Main {
 
     public static int bestVal = 0;
 
+    // 两张地图手工调出的道路权重，按 TrafficMap 中道路的遍历顺序排列
+    public static final double[] MAP1_WEIGHTS = new double[]{30.0, 24.0, 40.0, 30.0, 30.0, 20.0, 36.0, 40.0, 20.0, 72.0, 30.0, 24.0, 36.0, 40.0, 20.0, 30.0, 40.0, 24.0, 20.0, 30.0, 36.0, 20.0, 20.0, 20.0, 30.0, 20.0, 20.0, 36.0, 20.0, 40.0, 20.0, 40.0, 20.0, 40.0, 24.0, 40.0, 40.0, 20.0, 36.0, 40.0, 40.0, 30.0, 40.0, 30.0, 36.0, 36.0, 30.0, 36.0, 36.0, 30.0, 36.0, 24.0, 30.0, 36.0, 40.0, 36.0, 40.0, 40.0, 20.0, 20.0, 36.0, 36.0, 20.0, 24.0, 20.0, 24.0, 36.0, 20.0, 24.0, 20.0, 30.0, 20.0, 40.0, 36.0, 24.0, 36.0, 24.0, 36.0, 20.0, 20.0, 40.0, 40.0, 36.0, 24.0, 20.0, 36.0, 36.0, 40.0, 48.0, 40.0, 20.0, 40.0, 36.0, 24.0, 40.0, 40.0, 24.0, 30.0, 20.0, 20.0, 30.0, 20.0, 24.0, 24.0, 36.0, 36.0, 60.0, 40.0, 30.0, 36.0, 24.0, 36.0, 20.0, 30.0, 36.0, 20.0, 48.0, 40.0, 36.0, 36.0, 36.0, 20.0, 24.0, 24.0, 30.0, 20.0, 36.0, 24.0, 20.0, 30.0, 40.0, 20.0, 40.0, 72.0, 30.0, 20.0, 20.0, 20.0, 24.0, 36.0, 72.0, 36.0, 20.0, 20.0, 30.0, 20.0, 30.0, 40.0, 24.0, 40.0, 30.0, 20.0, 36.0, 40.0, 30.0, 20.0, 20.0, 24.0, 30.0, 20.0, 40.0, 40.0, 24.0, 36.0, 40.0, 30.0, 30.0, 24.0, 40.0, 36.0, 30.0, 40.0, 36.0, 36.0, 30.0, 20.0, 30.0, 40.0, 40.0, 36.0, 30.0, 40.0, 24.0, 40.0, 40.0, 20.0, 40.0, 20.0, 24.0, 30.0, 36.0, 24.0, 24.0, 20.0, 30.0, 24.0, 24.0, 30.0, 24.0, 24.0, 40.0, 40.0, 40.0, 20.0, 30.0, 30.0, 40.0, 40.0, 30.0, 40.0, 30.0, 36.0, 40.0, 20.0, 30.0, 48.0, 40.0, 24.0, 60.0, 40.0, 40.0, 36.0, 36.0, 36.0, 20.0, 30.0};
+    public static final double[] MAP2_WEIGHTS = new double[]{40.0, 24.0, 20.0, 30.0, 20.0, 30.0, 30.0, 30.0, 30.0, 30.0, 30.0, 36.0, 30.0, 24.0, 24.0, 36.0, 36.0, 30.0, 40.0, 40.0, 24.0, 30.0, 40.0, 30.0, 30.0, 24.0, 20.0, 30.0, 30.0, 24.0, 20.0, 30.0, 40.0, 24.0, 30.0, 24.0, 20.0, 30.0, 20.0, 30.0, 20.0, 30.0, 40.0, 20.0, 24.0, 40.0, 40.0, 24.0, 30.0, 40.0, 24.0, 36.0, 20.0, 36.0, 30.0, 40.0, 24.0, 30.0, 20.0, 30.0, 30.0, 36.0, 48.0, 36.0, 40.0, 40.0, 24.0, 40.0, 24.0, 20.0, 20.0, 20.0, 20.0, 24.0, 20.0, 20.0, 30.0, 20.0, 20.0, 48.0, 30.0, 40.0, 36.0, 24.0, 30.0, 24.0, 20.0, 36.0, 40.0, 40.0, 24.0, 40.0, 30.0, 40.0, 40.0, 24.0, 36.0, 24.0, 36.0, 20.0, 30.0, 30.0, 24.0, 30.0, 20.0, 40.0, 36.0, 36.0, 40.0, 30.0, 36.0, 36.0, 36.0, 24.0, 40.0, 40.0, 30.0, 24.0, 40.0, 30.0, 20.0, 24.0, 24.0, 20.0, 24.0, 24.0, 30.0, 30.0, 40.0, 30.0, 20.0, 30.0, 30.0, 40.0, 40.0, 40.0, 24.0, 20.0, 24.0, 40.0, 30.0, 20.0, 30.0, 40.0, 36.0, 40.0, 20.0, 30.0, 24.0, 40.0, 20.0, 30.0, 40.0, 20.0, 36.0, 24.0, 48.0, 36.0, 30.0, 20.0, 30.0, 40.0, 24.0, 24.0, 40.0, 40.0, 24.0, 72.0, 48.0, 20.0, 24.0, 30.0, 20.0, 40.0, 36.0, 30.0, 36.0, 40.0, 20.0, 40.0, 24.0, 20.0, 40.0, 30.0, 20.0, 40.0, 36.0, 40.0, 36.0, 36.0, 40.0, 20.0, 40.0, 20.0, 24.0, 24.0, 40.0, 40.0, 30.0, 20.0, 30.0, 40.0, 24.0, 24.0, 40.0, 20.0, 24.0, 40.0, 30.0, 36.0, 24.0, 36.0, 36.0, 24.0, 36.0, 36.0, 30.0, 36.0, 36.0, 40.0, 20.0, 40.0, 24.0, 36.0, 40.0, 40.0, 40.0, 24.0, 30.0, 30.0, 40.0, 40.0, 20.0, 24.0, 30.0, 30.0, 60.0, 24.0, 24.0, 24.0, 20.0, 20.0, 20.0, 30.0, 36.0, 20.0, 20.0, 24.0, 30.0, 36.0, 24.0, 20.0, 20.0, 36.0, 20.0, 20.0, 20.0, 36.0, 30.0, 40.0, 30.0, 20.0, 36.0, 36.0, 30.0, 30.0, 20.0, 40.0, 30.0};
+
     public static void initiate(String[] args) {
         logger.info("Start...");
 
@@ -33,8 +37,14 @@ public class Main {
         ArrayList<String> crossRoads = readFile(crossPath);
         ArrayList<String> presetAnswers = readFile(presetAnswerPath);
 
-        trafficMap = new TrafficMap(new Scheduler());
+        trafficMap = loadTrafficMap(cars, roads, crossRoads, presetAnswers);
         scheduler = trafficMap.getScheduler();
+    }
+
+    // 由输入文件的内容构造一份独立的地图和调度器，参数搜索时每个候选各用一份
+    public static TrafficMap loadTrafficMap(ArrayList<String> cars, ArrayList<String> roads, ArrayList<String> crossRoads, ArrayList<String> presetAnswers) {
+        TrafficMap trafficMap = new TrafficMap(new Scheduler());
+        Scheduler scheduler = trafficMap.getScheduler();
 
         // Add road first. Then add cross
         roads.forEach(
@@ -61,6 +71,9 @@ public class Main {
                 }
         );
 
+        // 按 id 升序分配稠密下标，之后的按 id 查找都走下标
+        scheduler.initIndex();
+
         presetAnswers.forEach(
                 answerLine -> {
                     String[] vars = answerLine.split(",");
@@ -75,8 +88,32 @@ public class Main {
                             }
                         }
                     }
+                    // 预置路径在载入时就检查是否连通
+                    scheduler.compileItinerary(car);
                 }
         );
+        return trafficMap;
+    }
+
+    public static boolean isMap1(TrafficMap trafficMap) {
+        Car car1 = trafficMap.getCar(37819);
+        return car1 != null && car1.getFrom() == 496 && car1.getTo() == 1208;
+    }
+
+    // 输出结果，无需输出预置车辆
+    public static ArrayList<String> collectAnswer(TrafficMap trafficMap) {
+        ArrayList<String> answer = new ArrayList<>();
+
+        ArrayList<Car> answerList = new ArrayList<>();
+        answerList.addAll(trafficMap.getCars().values());
+        answerList.sort(Car.pathLengthComparator);
+
+        answerList.forEach(car -> {
+            if (!car.isPreset()) {
+                answer.add(car.outputResult());
+            }
+        });
+        return answer;
     }
 
     public static void main(String[] args) {
@@ -89,8 +126,7 @@ public class Main {
 
 
 //        trafficMap.initGraphEdge(new double[]{30.0,24.0,40.0,30.0,30.0,20.0,36.0,40.0,20.0,72.0,30.0,24.0,36.0,40.0,20.0,30.0,40.0,24.0,20.0,30.0,36.0,20.0,20.0,20.0,30.0,20.0,20.0,36.0,20.0,40.0,20.0,40.0,20.0,40.0,24.0,40.0,40.0,20.0,36.0,40.0,40.0,30.0,40.0,30.0,36.0,36.0,30.0,36.0,36.0,30.0,36.0,24.0,30.0,36.0,40.0,36.0,40.0,40.0,20.0,20.0,36.0,36.0,20.0,24.0,20.0,24.0,36.0,20.0,24.0,20.0,30.0,20.0,40.0,36.0,24.0,36.0,24.0,36.0,20.0,20.0,40.0,40.0,36.0,24.0,20.0,36.0,36.0,40.0,48.0,40.0,20.0,40.0,36.0,24.0,40.0,40.0,24.0,30.0,20.0,20.0,30.0,20.0,24.0,24.0,36.0,36.0,60.0,40.0,30.0,36.0,24.0,36.0,20.0,30.0,36.0,20.0,48.0,40.0,36.0,36.0,36.0,20.0,24.0,24.0,30.0,20.0,36.0,24.0,20.0,30.0,40.0,20.0,40.0,36.0,30.0,20.0,20.0,20.0,24.0,36.0,36.0,36.0,20.0,20.0,30.0,20.0,30.0,40.0,24.0,40.0,30.0,20.0,36.0,40.0,30.0,20.0,20.0,24.0,30.0,20.0,40.0,40.0,24.0,36.0,40.0,30.0,30.0,24.0,40.0,36.0,30.0,40.0,36.0,36.0,30.0,20.0,30.0,40.0,40.0,36.0,30.0,40.0,24.0,40.0,40.0,20.0,40.0,20.0,24.0,30.0,36.0,24.0,24.0,20.0,30.0,24.0,24.0,30.0,24.0,24.0,40.0,40.0,40.0,20.0,30.0,30.0,40.0,40.0,30.0,40.0,30.0,36.0,40.0,20.0,30.0,48.0,40.0,24.0,30.0,40.0,40.0,36.0,36.0,36.0,20.0,30.0});
-        Car car1 = trafficMap.getCar(37819);
-        if (car1 != null && car1.getFrom() == 496 && car1.getTo() == 1208) {
+        if (isMap1(trafficMap)) {
             System.out.println("Map 1");
 
 //            trafficMap.preSchedule1(10);
@@ -100,7 +136,7 @@ public class Main {
 //            trafficMap.preSchedule1(17);
 //            trafficMap.preSchedule1(17);
 //            writeWeight(trafficMap.readGraphEdgeWeight());
-            trafficMap.initGraphEdge(new double[]{30.0, 24.0, 40.0, 30.0, 30.0, 20.0, 36.0, 40.0, 20.0, 72.0, 30.0, 24.0, 36.0, 40.0, 20.0, 30.0, 40.0, 24.0, 20.0, 30.0, 36.0, 20.0, 20.0, 20.0, 30.0, 20.0, 20.0, 36.0, 20.0, 40.0, 20.0, 40.0, 20.0, 40.0, 24.0, 40.0, 40.0, 20.0, 36.0, 40.0, 40.0, 30.0, 40.0, 30.0, 36.0, 36.0, 30.0, 36.0, 36.0, 30.0, 36.0, 24.0, 30.0, 36.0, 40.0, 36.0, 40.0, 40.0, 20.0, 20.0, 36.0, 36.0, 20.0, 24.0, 20.0, 24.0, 36.0, 20.0, 24.0, 20.0, 30.0, 20.0, 40.0, 36.0, 24.0, 36.0, 24.0, 36.0, 20.0, 20.0, 40.0, 40.0, 36.0, 24.0, 20.0, 36.0, 36.0, 40.0, 48.0, 40.0, 20.0, 40.0, 36.0, 24.0, 40.0, 40.0, 24.0, 30.0, 20.0, 20.0, 30.0, 20.0, 24.0, 24.0, 36.0, 36.0, 60.0, 40.0, 30.0, 36.0, 24.0, 36.0, 20.0, 30.0, 36.0, 20.0, 48.0, 40.0, 36.0, 36.0, 36.0, 20.0, 24.0, 24.0, 30.0, 20.0, 36.0, 24.0, 20.0, 30.0, 40.0, 20.0, 40.0, 72.0, 30.0, 20.0, 20.0, 20.0, 24.0, 36.0, 72.0, 36.0, 20.0, 20.0, 30.0, 20.0, 30.0, 40.0, 24.0, 40.0, 30.0, 20.0, 36.0, 40.0, 30.0, 20.0, 20.0, 24.0, 30.0, 20.0, 40.0, 40.0, 24.0, 36.0, 40.0, 30.0, 30.0, 24.0, 40.0, 36.0, 30.0, 40.0, 36.0, 36.0, 30.0, 20.0, 30.0, 40.0, 40.0, 36.0, 30.0, 40.0, 24.0, 40.0, 40.0, 20.0, 40.0, 20.0, 24.0, 30.0, 36.0, 24.0, 24.0, 20.0, 30.0, 24.0, 24.0, 30.0, 24.0, 24.0, 40.0, 40.0, 40.0, 20.0, 30.0, 30.0, 40.0, 40.0, 30.0, 40.0, 30.0, 36.0, 40.0, 20.0, 30.0, 48.0, 40.0, 24.0, 60.0, 40.0, 40.0, 36.0, 36.0, 36.0, 20.0, 30.0});
+            trafficMap.initGraphEdge(MAP1_WEIGHTS);
 //            trafficMap.scheduleTest1(30, 0.35, 60, 0.75);
 
             trafficMap.scheduleTest2(40, 0.60, 80, 0.75);
@@ -114,25 +150,15 @@ public class Main {
 //            trafficMap.preSchedule1(15);
 //            writeWeight(trafficMap.readGraphEdgeWeight());
 //            trafficMap.schedulePresetCarOnly();
-            trafficMap.initGraphEdge(new double[]{40.0, 24.0, 20.0, 30.0, 20.0, 30.0, 30.0, 30.0, 30.0, 30.0, 30.0, 36.0, 30.0, 24.0, 24.0, 36.0, 36.0, 30.0, 40.0, 40.0, 24.0, 30.0, 40.0, 30.0, 30.0, 24.0, 20.0, 30.0, 30.0, 24.0, 20.0, 30.0, 40.0, 24.0, 30.0, 24.0, 20.0, 30.0, 20.0, 30.0, 20.0, 30.0, 40.0, 20.0, 24.0, 40.0, 40.0, 24.0, 30.0, 40.0, 24.0, 36.0, 20.0, 36.0, 30.0, 40.0, 24.0, 30.0, 20.0, 30.0, 30.0, 36.0, 48.0, 36.0, 40.0, 40.0, 24.0, 40.0, 24.0, 20.0, 20.0, 20.0, 20.0, 24.0, 20.0, 20.0, 30.0, 20.0, 20.0, 48.0, 30.0, 40.0, 36.0, 24.0, 30.0, 24.0, 20.0, 36.0, 40.0, 40.0, 24.0, 40.0, 30.0, 40.0, 40.0, 24.0, 36.0, 24.0, 36.0, 20.0, 30.0, 30.0, 24.0, 30.0, 20.0, 40.0, 36.0, 36.0, 40.0, 30.0, 36.0, 36.0, 36.0, 24.0, 40.0, 40.0, 30.0, 24.0, 40.0, 30.0, 20.0, 24.0, 24.0, 20.0, 24.0, 24.0, 30.0, 30.0, 40.0, 30.0, 20.0, 30.0, 30.0, 40.0, 40.0, 40.0, 24.0, 20.0, 24.0, 40.0, 30.0, 20.0, 30.0, 40.0, 36.0, 40.0, 20.0, 30.0, 24.0, 40.0, 20.0, 30.0, 40.0, 20.0, 36.0, 24.0, 48.0, 36.0, 30.0, 20.0, 30.0, 40.0, 24.0, 24.0, 40.0, 40.0, 24.0, 72.0, 48.0, 20.0, 24.0, 30.0, 20.0, 40.0, 36.0, 30.0, 36.0, 40.0, 20.0, 40.0, 24.0, 20.0, 40.0, 30.0, 20.0, 40.0, 36.0, 40.0, 36.0, 36.0, 40.0, 20.0, 40.0, 20.0, 24.0, 24.0, 40.0, 40.0, 30.0, 20.0, 30.0, 40.0, 24.0, 24.0, 40.0, 20.0, 24.0, 40.0, 30.0, 36.0, 24.0, 36.0, 36.0, 24.0, 36.0, 36.0, 30.0, 36.0, 36.0, 40.0, 20.0, 40.0, 24.0, 36.0, 40.0, 40.0, 40.0, 24.0, 30.0, 30.0, 40.0, 40.0, 20.0, 24.0, 30.0, 30.0, 60.0, 24.0, 24.0, 24.0, 20.0, 20.0, 20.0, 30.0, 36.0, 20.0, 20.0, 24.0, 30.0, 36.0, 24.0, 20.0, 20.0, 36.0, 20.0, 20.0, 20.0, 36.0, 30.0, 40.0, 30.0, 20.0, 36.0, 36.0, 30.0, 30.0, 20.0, 40.0, 30.0});
+            trafficMap.initGraphEdge(MAP2_WEIGHTS);
             trafficMap.scheduleTest2(50, 0.5, 80, 0.75);
         }
 
 
         //打印结果，无需打印预置车辆
-        ArrayList<String> answer = new ArrayList<>();
+        ArrayList<String> answer = collectAnswer(trafficMap);
         String answerPath = args[4];
 
-        ArrayList<Car> answerList = new ArrayList<>();
-        answerList.addAll(trafficMap.getCars().values());
-        answerList.sort(Car.pathLengthComparator);
-
-        answerList.forEach(car -> {
-            if (!car.isPreset()) {
-                answer.add(car.outputResult());
-            }
-        });
-
 //        trafficMap.getCars().forEach(
 //                (carId, car) -> {
 //                    if (!car.isPreset()) {
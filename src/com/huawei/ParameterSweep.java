@@ -0,0 +1,279 @@
+package com.huawei;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 并行搜索 scheduleTest1/2/3 的参数 (carFlow1, threshold1, carFlow2, threshold2) 和道路权重。
+// 每个候选在线程池里用一份独立的地图和调度器运行，按判题器的两个分数取最好的结果并输出它的答案。
+//
+// 用法: ParameterSweep car.txt road.txt cross.txt presetAnswer.txt answer.txt [key=value ...]
+//   carFlow1=30,40,50 threshold1=0.5,0.6 carFlow2=60,80 threshold2=0.75   各参数的取值，组合成网格
+//   weights=a.txt,b.txt   额外的道路权重文件 (Main.writeWeight 的格式)，默认只用 Main 里当前地图的权重
+//   samples=N seed=S      从网格中随机抽取 N 个组合，不设置时搜索整个网格
+//   strategy=2            调用 scheduleTest1/2/3 中的哪一个
+//   threads=T             线程数，默认为 CPU 核数
+public class ParameterSweep {
+
+    // 一个候选参数组合
+    public static class Candidate {
+        final int carFlow1;
+        final double threshold1;
+        final int carFlow2;
+        final double threshold2;
+        final int weightIndex;
+
+        Candidate(int carFlow1, double threshold1, int carFlow2, double threshold2, int weightIndex) {
+            this.carFlow1 = carFlow1;
+            this.threshold1 = threshold1;
+            this.carFlow2 = carFlow2;
+            this.threshold2 = threshold2;
+            this.weightIndex = weightIndex;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + carFlow1 + ", " + threshold1 + ", " + carFlow2 + ", " + threshold2 + ") weights#" + weightIndex;
+        }
+    }
+
+    // 一次完整调度的结果
+    public static class Result {
+        final Candidate candidate;
+        final long systemScore;
+        final double totalScore;
+        final ArrayList<String> answer;
+
+        Result(Candidate candidate, long systemScore, double totalScore, ArrayList<String> answer) {
+            this.candidate = candidate;
+            this.systemScore = systemScore;
+            this.totalScore = totalScore;
+            this.answer = answer;
+        }
+
+        // 先比系统调度时间，相同时比总调度时间
+        boolean betterThan(Result other) {
+            if (other == null)
+                return true;
+            if (systemScore != other.systemScore)
+                return systemScore < other.systemScore;
+            return totalScore < other.totalScore;
+        }
+
+        @Override
+        public String toString() {
+            return candidate + " 系统调度时间: " + systemScore + " 所有车辆实际总调度时间: " + totalScore;
+        }
+    }
+
+    private final ArrayList<String> cars;
+    private final ArrayList<String> roads;
+    private final ArrayList<String> crossRoads;
+    private final ArrayList<String> presetAnswers;
+
+    private final ArrayList<double[]> weightList = new ArrayList<>();
+    private int strategy = 2;
+
+    private final AtomicReference<Result> best = new AtomicReference<>();
+    private final AtomicInteger finished = new AtomicInteger();
+
+    public ParameterSweep(ArrayList<String> cars, ArrayList<String> roads, ArrayList<String> crossRoads, ArrayList<String> presetAnswers) {
+        this.cars = cars;
+        this.roads = roads;
+        this.crossRoads = crossRoads;
+        this.presetAnswers = presetAnswers;
+    }
+
+    public void addWeights(double[] weights) {
+        weightList.add(weights);
+    }
+
+    public void setStrategy(int strategy) {
+        this.strategy = strategy;
+    }
+
+    // 各参数取值的笛卡尔积，再乘上所有权重
+    public ArrayList<Candidate> grid(int[] carFlow1s, double[] threshold1s, int[] carFlow2s, double[] threshold2s) {
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        for (int w = 0; w < weightList.size(); w++)
+            for (int carFlow1 : carFlow1s)
+                for (double threshold1 : threshold1s)
+                    for (int carFlow2 : carFlow2s)
+                        for (double threshold2 : threshold2s)
+                            candidates.add(new Candidate(carFlow1, threshold1, carFlow2, threshold2, w));
+        return candidates;
+    }
+
+    // 从候选中不重复地随机抽取 samples 个
+    public static ArrayList<Candidate> sample(ArrayList<Candidate> candidates, int samples, long seed) {
+        ArrayList<Candidate> shuffled = new ArrayList<>(candidates);
+        Collections.shuffle(shuffled, new Random(seed));
+        return new ArrayList<>(shuffled.subList(0, Math.min(samples, shuffled.size())));
+    }
+
+    // 并行运行所有候选，返回最好的结果，全部失败时返回 null
+    public Result run(ArrayList<Candidate> candidates, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (Candidate candidate : candidates) {
+            pool.execute(() -> {
+                Result result = evaluate(candidate);
+                int done = finished.incrementAndGet();
+                if (result == null) {
+                    System.err.println("[" + done + "/" + candidates.size() + "] " + candidate + " 调度失败");
+                    return;
+                }
+                Result now = best.accumulateAndGet(result, (a, b) -> b.betterThan(a) ? b : a);
+                System.err.println("[" + done + "/" + candidates.size() + "] " + result + (now == result ? " *" : ""));
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return best.get();
+    }
+
+    // 在一份新建的地图上完整调度一次，死锁无法恢复时返回 null
+    public Result evaluate(Candidate candidate) {
+        try {
+            TrafficMap trafficMap = Main.loadTrafficMap(cars, roads, crossRoads, presetAnswers);
+            trafficMap.initGraphEdge(weightList.get(candidate.weightIndex));
+
+            Long time;
+            if (strategy == 1)
+                time = trafficMap.scheduleTest1(candidate.carFlow1, candidate.threshold1, candidate.carFlow2, candidate.threshold2);
+            else if (strategy == 3)
+                time = trafficMap.scheduleTest3(candidate.carFlow1, candidate.threshold1, candidate.carFlow2, candidate.threshold2);
+            else
+                time = trafficMap.scheduleTest2(candidate.carFlow1, candidate.threshold1, candidate.carFlow2, candidate.threshold2);
+
+            Scheduler scheduler = trafficMap.getScheduler();
+            if (time == null || time < 0 || !scheduler.allCarArrived())
+                return null;
+            double[] scores = scheduler.getJudgeScores();
+            return new Result(candidate, (long) scores[0], scores[1], Main.collectAnswer(trafficMap));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ArrayList<String> cars = Main.readFile(args[0]);
+        ArrayList<String> roads = Main.readFile(args[1]);
+        ArrayList<String> crossRoads = Main.readFile(args[2]);
+        ArrayList<String> presetAnswers = Main.readFile(args[3]);
+        String answerPath = args[4];
+
+        int[] carFlow1s = {30, 40, 50};
+        double[] threshold1s = {0.5, 0.6};
+        int[] carFlow2s = {60, 80};
+        double[] threshold2s = {0.75};
+        int samples = -1;
+        long seed = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        ParameterSweep sweep = new ParameterSweep(cars, roads, crossRoads, presetAnswers);
+        sweep.addWeights(Main.isMap1(Main.loadTrafficMap(cars, roads, crossRoads, presetAnswers)) ? Main.MAP1_WEIGHTS : Main.MAP2_WEIGHTS);
+
+        for (int i = 5; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            if (kv.length != 2) {
+                System.err.println("ParameterSweep#unknown argument " + args[i]);
+                continue;
+            }
+            String value = kv[1];
+            switch (kv[0]) {
+                case "carFlow1":
+                    carFlow1s = parseInts(value);
+                    break;
+                case "threshold1":
+                    threshold1s = parseDoubles(value);
+                    break;
+                case "carFlow2":
+                    carFlow2s = parseInts(value);
+                    break;
+                case "threshold2":
+                    threshold2s = parseDoubles(value);
+                    break;
+                case "weights":
+                    for (String path : value.split(",")) {
+                        double[] weights = Main.readWeight(path);
+                        if (weights != null)
+                            sweep.addWeights(weights);
+                    }
+                    break;
+                case "samples":
+                    samples = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "strategy":
+                    sweep.setStrategy(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                default:
+                    System.err.println("ParameterSweep#unknown argument " + args[i]);
+            }
+        }
+
+        ArrayList<Candidate> candidates = sweep.grid(carFlow1s, threshold1s, carFlow2s, threshold2s);
+        if (samples > 0)
+            candidates = sample(candidates, samples, seed);
+        System.err.println("Sweep " + candidates.size() + " candidates on " + threads + " threads");
+
+        long startTime = System.currentTimeMillis();
+        // 每次调度都会打印每个时刻的车辆状态，并行时没有意义，只保留标准错误上的进度
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Result result;
+        try {
+            result = sweep.run(candidates, threads);
+        } finally {
+            System.setOut(out);
+        }
+        long endTime = System.currentTimeMillis();
+
+        if (result == null) {
+            System.err.println("没有成功调度的参数组合");
+            return;
+        }
+        System.out.println("Best " + result);
+        Main.writeFile(result.answer, answerPath);
+        System.out.println("Sweep 运行时间：" + (endTime - startTime) + "ms");
+    }
+
+    private static int[] parseInts(String value) {
+        String[] strings = value.split(",");
+        int[] values = new int[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            values[i] = Integer.parseInt(strings[i]);
+        }
+        return values;
+    }
+
+    private static double[] parseDoubles(String value) {
+        String[] strings = value.split(",");
+        double[] values = new double[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            values[i] = Double.parseDouble(strings[i]);
+        }
+        return values;
+    }
+}
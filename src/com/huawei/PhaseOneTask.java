@@ -0,0 +1,42 @@
+package com.huawei;
+
+import java.util.concurrent.RecursiveTask;
+
+// 并行的第一阶段：把行驶方向 [from, to) 二分下去，每段不超过 GRAIN 个方向时顺序处理，
+// 返回每一类车辆中 WAIT 状态的数量，按 CarStateCounter 的类别下标
+public class PhaseOneTask extends RecursiveTask<int[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int GRAIN = 64;
+
+    private final DirectedRoad[] directedRoads;
+    private final int from;
+    private final int to;
+
+    public PhaseOneTask(DirectedRoad[] directedRoads, int from, int to) {
+        this.directedRoads = directedRoads;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected int[] compute() {
+        if (to - from <= GRAIN) {
+            int[] waiting = new int[CarStateCounter.CLASSES];
+            for (int i = from; i < to; i++) {
+                directedRoads[i].moveCarsOnRoad(waiting);
+            }
+            return waiting;
+        }
+        int mid = (from + to) >>> 1;
+        PhaseOneTask left = new PhaseOneTask(directedRoads, from, mid);
+        left.fork();
+        int[] waiting = new PhaseOneTask(directedRoads, mid, to).compute();
+        int[] leftWaiting = left.join();
+        for (int c = 0; c < waiting.length; c++) {
+            waiting[c] += leftWaiting[c];
+        }
+        return waiting;
+    }
+}
@@ -5,6 +5,8 @@ import java.util.stream.Collectors;
 
 public class Road {
     private int id;
+    // 按 id 升序分配的稠密下标
+    private int index = -1;
     private int len;
     private int topSpeed;
     private int numOfLanes;
@@ -17,11 +19,8 @@ public class Road {
     // 如车道为6,路口id顺序为 123123
     private ArrayList<Lane> laneList;
 
-    // Key 为路的出口路口Id
-    private HashMap<Integer, ArrayList<Car>> carSequenceListMap = new HashMap<>();
-
-    // Key 为路的出口路口Id
-    private HashMap<Integer, ArrayList<Car>> garageMap = new HashMap<>();
+    // 每个行驶方向一个 DirectedRoad，下标为方向: 0 驶向 end 路口, 1 驶向 start 路口 (仅双向道路)
+    private DirectedRoad[] directedRoads;
 
 
     public Road(int id, int len, int topSpeed, int numOfLanes, int start, int end, boolean bidirectional) {
@@ -34,8 +33,7 @@ public class Road {
         this.bidirectional = bidirectional;
 
         initLaneList();
-        initCarSequence();
-        initGarage();
+        initDirectedRoads();
     }
 
     public Road(String line) {
@@ -49,8 +47,7 @@ public class Road {
         this.bidirectional = vars[6].equals("1");
 
         initLaneList();
-        initCarSequence();
-        initGarage();
+        initDirectedRoads();
     }
 
     private void initLaneList() {
@@ -69,132 +66,53 @@ public class Road {
         }
     }
 
-    private void initGarage() {
-        garageMap.clear();
-        // initCarSequence
-        garageMap.put(getEnd(), new ArrayList<>());
+    private void initDirectedRoads() {
+        int n = getNumOfLanes();
+        directedRoads = new DirectedRoad[isBidirectional() ? 2 : 1];
+        directedRoads[0] = new DirectedRoad(this, 0, laneList.subList(0, n).toArray(new Lane[0]));
         if (isBidirectional()) {
-            garageMap.put(getStart(), new ArrayList<>());
+            directedRoads[1] = new DirectedRoad(this, 1, laneList.subList(n, n * 2).toArray(new Lane[0]));
         }
     }
 
-
-    private void initCarSequence() {
-        carSequenceListMap.clear();
-        // initCarSequence
-        carSequenceListMap.put(getEnd(), new ArrayList<>());
-        if (isBidirectional()) {
-            carSequenceListMap.put(getStart(), new ArrayList<>());
-        }
+    // 出口路口对应的方向，不是该路的出口时返回 -1
+    private int directionOf(int crossRoadId) {
+        if (crossRoadId == getEnd())
+            return 0;
+        if (isBidirectional() && crossRoadId == getStart())
+            return 1;
+        return -1;
     }
 
+    // 从 exitCrossId 驶出的方向，没有该方向时返回 null
+    public DirectedRoad getDirectedRoad(int exitCrossId) {
+        int direction = directionOf(exitCrossId);
+        return direction == -1 ? null : directedRoads[direction];
+    }
 
-    // 出发的车
-    public boolean putCarOnRoad(Car car, int nextCrossRoadId) {
-        int sv1 = Math.min(car.getTopSpeed(), this.getTopSpeed());
-        for (int i = 1; i <= getNumOfLanes(); i++) {
-            Lane lane = null;
-            // Get lane
-            if (isBidirectional()) {
-                if (car.getFrom() == this.getStart() && this.getEnd() == nextCrossRoadId)
-                    lane = getLaneListBy(this.getEnd()).get(i - 1);
-                else
-                    lane = getLaneListBy(this.getStart()).get(i - 1);
-            } else
-                lane = laneList.get(i - 1);
-            int front = lane.getFrontCarPosition(0);
-
-            if (front != -1) {
-                if (front > 1) {
-                    // 前方有车 而且车道有位置
-                    Car frontCar = lane.getCar(front);
-                    CarState state = frontCar.getState();
-
-                    int dist = frontCar.getPosition() - 1;
-                    if (sv1 <= dist) {
-                        car.setPosition(sv1);
-                    } else {
-                        // 在进入车辆的最大可行距离内有等待车辆阻挡，不出车。
-                        if (state == CarState.WAIT)
-                            return false;
-
-                        // 前面车是处于END State
-                        car.setPosition(frontCar.getPosition() - 1);
-                    }
-                    lane.putCar(car, car.getPosition());
-                    car.setLaneId(lane.getId()).setCurrentSpeed(sv1).setState(CarState.END).setRoadIdx(0);
-                    return true;
-                } else {
-                    // 该车道已满
-                    if(lane.getCar(front).getState()==CarState.WAIT)
-                        break;
-                    else
-                        continue;
-                }
-            } else {
-                // 车可以上路，设置状态
-                if (sv1 < this.getLen()) {
-                    car.setPosition(sv1).setState(CarState.END).setLaneId(lane.getId()).setCurrentSpeed(sv1).setRoadIdx(0);
-                    lane.putCar(car, car.getPosition());
-                    return true;
-                } else {
-                    //官方论坛的人回答说不会出现这种情况
-                    System.err.println("Road#putCarOnRoad#error");
-                }
-            }
+    // 从 entryCrossId 驶入的方向，没有该方向时返回 null
+    public DirectedRoad getDirectedRoadFrom(int entryCrossId) {
+        for (DirectedRoad directedRoad : directedRoads) {
+            if (directedRoad.getEntryCross() == entryCrossId)
+                return directedRoad;
         }
-        return false;
+        return null;
+    }
+
+    public DirectedRoad[] getDirectedRoads() {
+        return directedRoads;
     }
 
     // 对单独车道处理
     public void moveCarsOnRoad(int laneId, int crossRoadId) {
-
-        Lane lane = getLaneListBy(crossRoadId).get(laneId - 1);
-        if (lane.isEmpty())
-            //车道为空 没必要继续
-            return;
-
-        List<Integer> positionList = lane.getDescendingPositionList();
-        for (Integer position : positionList) {
-            Car car = lane.getCar(position);
-            int sv1 = car.getCurrentSpeed(); // 当前车速在当前道路的最大行驶距离
-            int front = lane.getFrontCarPosition(position);
-            if (front != -1) { // 前方有车
-                Car frontCar = lane.getCar(front);
-                CarState state = frontCar.getState();
-                int dist = frontCar.getPosition() - car.getPosition() - 1;
-                if (sv1 <= dist) {
-                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
-                } else {
-                    // 会碰上车。
-                    if (state == CarState.END) {
-                        car.setPosition(frontCar.getPosition() - 1).setState(CarState.END);
-                    } else if (state == CarState.WAIT) {
-                        car.setState(CarState.WAIT);
-                    } else {
-                        System.err.println("Road#moveCarsOnRoad#error");
-                    }
-                }
-            } else {
-                // 前方没有车
-                // 需要等于
-                if (sv1 <= this.getLen() - position) {
-                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
-                } else { // 可以出路口
-                    car.setState(CarState.WAIT);
-                }
-            }
-            if (car.getPosition() != position) {
-                lane.updateCar(car, position, car.getPosition());
-            }
-        }
+        DirectedRoad directedRoad = getDirectedRoad(crossRoadId);
+        directedRoad.moveCarsOnLane(directedRoad.getLane(laneId));
     }
 
     public void moveCarsOnRoad() {
         for (int i = 1; i <= getNumOfLanes(); i++) {
-            moveCarsOnRoad(i, getEnd());
-            if (isBidirectional()) {
-                moveCarsOnRoad(i, getStart());
+            for (DirectedRoad directedRoad : directedRoads) {
+                directedRoad.moveCarsOnLane(directedRoad.getLane(i));
             }
         }
     }
@@ -204,42 +122,22 @@ public class Road {
     }
 
     public void createSequenceList(int crossRoadId) {
-        // 把车放入等待列表， 需要根据车道进行排序
-
-        ArrayList<Car> carSequenceList = carSequenceListMap.get(crossRoadId);
+        DirectedRoad directedRoad = getDirectedRoad(crossRoadId);
         // 错误方向的调用
-        if (carSequenceList == null) {
+        if (directedRoad == null) {
             return;
         }
+        directedRoad.createSequenceList();
+    }
 
-        carSequenceList.clear();
-        ArrayList<Lane> lanes = getLaneListBy(crossRoadId);
-        lanes.forEach(
-                lane -> {
-                    Map<Integer, Car> carMap = lane.getCarMap();
-                    List<Integer> list = lane.getDescendingPositionList();
-                    if (list.size() != 0) {
-                        Car car = carMap.get(list.get(0));
-                        // 找到最前面WAIT状态的车
-                        if (car.getState() == CarState.WAIT) {
-                            carSequenceList.add(car);
-                        }
-                    }
-                }
-        );
-        carSequenceList.sort(Car.priorityLaneIdComparator);
-    }
-
-
-    public ArrayList<Lane> getLaneListBy(int crossRoadId) {
-        if (crossRoadId == getEnd()) {
-            return new ArrayList<Lane>(laneList.subList(0, getNumOfLanes()));
-        } else if (crossRoadId == getStart()) {
-            return new ArrayList<Lane>(laneList.subList(getNumOfLanes(), getNumOfLanes() * 2));
-        } else {
+
+    public List<Lane> getLaneListBy(int crossRoadId) {
+        DirectedRoad directedRoad = getDirectedRoad(crossRoadId);
+        if (directedRoad == null) {
             System.err.println("Road#getLaneListBy#error");
             return null;
         }
+        return directedRoad.getLaneList();
     }
 
     public ArrayList<Lane> getLaneList() {
@@ -248,54 +146,43 @@ public class Road {
     }
 
     public ArrayList<Car> getCarSequenceList(int crossId) {
-        createSequenceList(crossId);
-        return carSequenceListMap.get(crossId);
+        DirectedRoad directedRoad = getDirectedRoad(crossId);
+        return directedRoad == null ? null : directedRoad.getCarSequenceList();
     }
 
     public void addToGarage(Car car) {
-        car.setState(CarState.IN_GARAGE);
         if (car.getFrom() == getStart()) {
-            if (!garageMap.get(getEnd()).contains(car)) {
-                garageMap.get(getEnd()).add(car);
-                garageMap.get(getEnd()).sort(Car.priorityTimeIdComparator);
-            }
-        } else if (car.getFrom() == getEnd()) {
-            if (!garageMap.get(getStart()).contains(car)) {
-                garageMap.get(getStart()).add(car);
-                garageMap.get(getStart()).sort(Car.priorityTimeIdComparator);
-            }
-        } else
+            directedRoads[0].addToGarage(car);
+        } else if (car.getFrom() == getEnd() && isBidirectional()) {
+            directedRoads[1].addToGarage(car);
+        } else {
             System.err.println("addToGarage# unexpected direction");
+        }
     }
 
     // 把车辆从路上移除
     public void removeCarFromRoad(Car car) {
         Lane lane = laneContainsCar(car);
-        Iterator<Car> iterator = lane.getCarMap().values().iterator();
-        while (iterator.hasNext()) {
-            Car carOnLane = iterator.next();
-            if (carOnLane.getId() == car.getId()) {
-                iterator.remove();
-                break;
-            }
-        }
+        if (lane != null)
+            lane.removeCar(car);
     }
 
     public void removeCarFromRoad(Car car, Lane lane) {
-        Iterator<Car> iterator = lane.getCarMap().values().iterator();
-        while (iterator.hasNext()) {
-            Car carOnLane = iterator.next();
-            if (carOnLane.getId() == car.getId()) {
-                iterator.remove();
-                break;
-            }
-        }
+        lane.removeCar(car);
     }
 
     public int getId() {
         return id;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public void setId(int id) {
         this.id = id;
     }
@@ -349,16 +236,16 @@ public class Road {
     }
 
     public void resetRoadState() {
-        initLaneList();
-        initCarSequence();
-        initGarage();
+        for (DirectedRoad directedRoad : directedRoads) {
+            directedRoad.reset();
+        }
     }
 
     public double calculateLoad() {
         int totalCapacity = getNumOfLanes() * getLen() * (isBidirectional() ? 2 : 1);
         int numberOfCar = 0;
         for (Lane lane : laneList) {
-            numberOfCar += lane.getCarMap().size();
+            numberOfCar += lane.getCarCount();
         }
         return numberOfCar / (totalCapacity * 1.0);
     }
@@ -368,55 +255,14 @@ public class Road {
             System.err.println("Road#updateLane#error");
             System.exit(0);
         }
-
-        if (lane.isEmpty()) {
-            //车道为空 没必要继续
-            return;
-        }
-
-        List<Integer> positionList = lane.getDescendingPositionList();
-        for (Integer position : positionList) {
-            Car car = lane.getCar(position);
-            if (car.getState() != CarState.WAIT) {
-                continue;
-            }
-            int sv1 = car.getCurrentSpeed(); // 当前车速在当前道路的最大行驶距离
-            int front = lane.getFrontCarPosition(position);
-            if (front != -1) { // 前方有车
-                Car frontCar = lane.getCar(front);
-                CarState state = frontCar.getState();
-                int dist = frontCar.getPosition() - car.getPosition() - 1;
-                if (sv1 <= dist) {
-                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
-                } else {
-                    // 会碰上车。
-                    if (state == CarState.END) {
-                        car.setPosition(frontCar.getPosition() - 1).setState(CarState.END);
-                    } else if (state == CarState.WAIT) {
-                        car.setState(CarState.WAIT);
-                    } else {
-                        System.err.println("Road#moveCarsOnRoad#error");
-                    }
-                }
-            } else {
-                // 前方没有车
-                // 需要等于
-                if (sv1 <= this.getLen() - position) {
-                    car.setPosition(sv1 + car.getPosition()).setState(CarState.END);
-                } else { // 可以出路口
-                    car.setState(CarState.WAIT);
-                }
-            }
-            if (car.getPosition() != position) {
-                lane.updateCar(car, position, car.getPosition());
-            }
-        }
+        directedRoads[lane == laneList.get(lane.getId() - 1) ? 0 : 1].updateLane(lane);
     }
 
     public Lane laneContainsCar(Car car) {
         Lane laneContainCar = null;
-        for (Lane lane : getLaneList()) {
-            if (lane.getCarMap().containsValue(car)) {
+        Lane lane = car.getLane();
+        for (DirectedRoad directedRoad : directedRoads) {
+            if (directedRoad.containsLane(lane)) {
                 laneContainCar = lane;
                 break;
             }
@@ -427,40 +273,14 @@ public class Road {
         return laneContainCar;
     }
 
-    public void runCarsInGarage(boolean priority) {
-        runCarsInGarage(priority, getEnd());
-        if (isBidirectional())
-            runCarsInGarage(priority, getStart());
+    public void runCarsInGarage(boolean priority, long time) {
+        for (DirectedRoad directedRoad : directedRoads) {
+            directedRoad.runCarsInGarage(priority, time);
+        }
     }
 
-    public void runCarsInGarage(boolean priority, int crossId) {
-        if (garageMap.get(crossId).size() == 0)
-            return;
-
-        Iterator<Car> iterator = garageMap.get(crossId).iterator();
-        while (iterator.hasNext()) {
-            Car car = iterator.next();
-            if (car.getState() != CarState.IN_GARAGE) {
-                System.err.println("ERROR: 车库里出现错误状态的车。" + car.getId()+" state "+car.getState());
-            }
-
-            // 仅允许高优先级的车出发
-            if (priority) {
-                //优先的车总是排在最前面，所以可以直接break，优化时间复杂度
-                if (!car.isPriority())
-                    break;
-            }
-            if (car.getStartTime() <= Scheduler.systemScheduleTime) { // 车辆到达开始时间
-
-                if (putCarOnRoad(car, crossId)) {
-                    // 上路成功,从车库中删除车辆。否则车等待下一时刻才开。
-                    car.setActualStartTime(Scheduler.systemScheduleTime);
-                    iterator.remove();
-                }
-            }
-
-
-        }
+    public void runCarsInGarage(boolean priority, int crossId, long time) {
+        getDirectedRoad(crossId).runCarsInGarage(priority, time);
     }
 
 }
@@ -2,8 +2,6 @@ package com.huawei;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
-import java.util.ArrayList;
-
 public class RoadEdge extends DefaultWeightedEdge {
 
     protected Road road;
@@ -11,6 +9,8 @@ public class RoadEdge extends DefaultWeightedEdge {
     protected CrossRoads to;
     protected double weightBefore = 0.0;
     protected double weightNow = 0.0;
+    // 在 RoutingGraph 中的边下标，还没有生成时为 -1
+    protected int routingIndex = -1;
 
     public RoadEdge() {
         super();
@@ -51,21 +51,8 @@ public class RoadEdge extends DefaultWeightedEdge {
     }
 
     public int calculateCarCount() {
-        int numberOfCar = 0;
-
-        ArrayList<Lane> laneList;
-        // Get lane
-        if (road.isBidirectional()) {
-            if (from.getId() == road.getStart())
-                laneList = road.getLaneListBy(road.getEnd());
-            else
-                laneList = road.getLaneListBy(road.getStart());
-        } else
-            laneList = road.getLaneList();
-
-        for (Lane lane : laneList) {
-            numberOfCar += lane.getCarMap().size();
-        }
-        return numberOfCar;
+        // 单向道路只有一个方向
+        DirectedRoad directedRoad = road.isBidirectional() ? road.getDirectedRoadFrom(from.getId()) : road.getDirectedRoads()[0];
+        return directedRoad.calculateCarCount();
     }
 }
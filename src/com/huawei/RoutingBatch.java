@@ -0,0 +1,49 @@
+package com.huawei;
+
+// 按起点缓存整棵最短路径树。放车时同一个路口出发的车很多，while (changed) 还会反复查询同一批起点，
+// 而一个时刻内的权重只在 updateGraphEdge 时变化。所以每个起点在权重不变期间只做一次完整的搜索，
+// 同一起点的其它查询沿树上的前驱边回溯即可。树记下建树时 RoutingGraph 的版本，权重变了就在下次查询时重建。
+// 树上的路径与单独查询 RoutingGraph.shortestPath 的结果完全相同
+public class RoutingBatch {
+
+    private static final int NONE = -1;
+
+    private final RoutingGraph graph;
+
+    // 按起点的稠密下标，还没查询过的起点为 null
+    private final int[][] pred;
+    private final long[] version;
+
+    public RoutingBatch(RoutingGraph graph) {
+        this.graph = graph;
+        pred = new int[graph.getVertexCount()][];
+        version = new long[graph.getVertexCount()];
+    }
+
+    // 与 RoutingGraph.shortestPath 相同的约定：边下标写入 path，返回边数，不连通时返回 -1
+    public int shortestPath(int from, int to, int[] path) {
+        if (from == to)
+            return 0;
+        if (pred[from] == null) {
+            pred[from] = new int[graph.getVertexCount()];
+            graph.shortestPathTree(from, pred[from]);
+            version[from] = graph.getVersion();
+        } else if (version[from] != graph.getVersion()) {
+            graph.shortestPathTree(from, pred[from]);
+            version[from] = graph.getVersion();
+        }
+
+        int[] tree = pred[from];
+        if (tree[to] == NONE)
+            return -1;
+        int length = 0;
+        for (int v = to; v != from; v = graph.getSource(tree[v])) {
+            length++;
+        }
+        int i = length;
+        for (int v = to; v != from; v = graph.getSource(tree[v])) {
+            path[--i] = tree[v];
+        }
+        return length;
+    }
+}
@@ -0,0 +1,222 @@
+package com.huawei;
+
+import org.jgrapht.Graph;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+
+import java.util.ArrayList;
+
+// 比较几种路径规划的速度: JGraphT 的 DijkstraShortestPath、RoutingGraph 的斐波那契堆、Dial 桶队列、
+// RoutingBatch 按起点共用的搜索和 RoutingCache 的最短路径树。
+// 每辆车的起点到终点查询一次，权重用 Main 为该地图设置的权重；再把每 CONGESTED_STRIDE 条边设为拥堵的 99999 测一遍。
+// 最后模拟 updateGraphEdge：每一轮有 1 / CHURN_STRIDE 的边在拥堵和原权重之间切换，比较斐波那契堆和需要修补的最短路径树。
+// 同时检查斐波那契堆、Dial 和按起点共用搜索的路径与 JGraphT 完全相同，最短路径树的路径长度与 JGraphT 相同，不一致时以非 0 状态退出。
+//
+// 用法: RoutingBenchmark [轮数，默认 5] [配置目录 ...，默认 SDK_java/bin/config]
+// 不在 makelist.txt 中，不随判题程序一起编译
+public class RoutingBenchmark {
+
+    private static final int CONGESTED_STRIDE = 7;
+    private static final double CONGESTED_WEIGHT = 99999;
+    private static final int CHURN_STRIDE = 50;
+
+    private static boolean failed = false;
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        ArrayList<String> dirs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            dirs.add(args[i]);
+        }
+        if (dirs.isEmpty())
+            dirs.add("SDK_java/bin/config");
+
+        for (String dir : dirs) {
+            TrafficMap trafficMap = Main.loadTrafficMap(Main.readFile(dir + "/car.txt"), Main.readFile(dir + "/road.txt"),
+                    Main.readFile(dir + "/cross.txt"), Main.readFile(dir + "/presetAnswer.txt"));
+            boolean map1 = Main.isMap1(trafficMap);
+            trafficMap.initGraphEdge(map1 ? Main.MAP1_WEIGHTS : Main.MAP2_WEIGHTS);
+            // 各方法单独计时，需要时再打开
+            trafficMap.setBatchRouting(false);
+            System.out.println(dir + " (" + (map1 ? "Map 1" : "Map 2") + ")");
+            run("  default  ", trafficMap, rounds);
+
+            Graph<CrossRoads, RoadEdge> graph = trafficMap.getGraph();
+            RoutingGraph routing = trafficMap.getRouting();
+            for (int e = 0; e < routing.getEdgeCount(); e += CONGESTED_STRIDE) {
+                graph.setEdgeWeight(routing.getEdge(e), CONGESTED_WEIGHT);
+                routing.setWeight(routing.getEdge(e), CONGESTED_WEIGHT);
+            }
+            run("  congested", trafficMap, rounds);
+            churn("  churn    ", trafficMap, rounds);
+        }
+        if (failed)
+            System.exit(1);
+    }
+
+    private static void run(String name, TrafficMap trafficMap, int rounds) {
+        Graph<CrossRoads, RoadEdge> graph = trafficMap.getGraph();
+        RoutingGraph routing = trafficMap.getRouting();
+        Scheduler scheduler = trafficMap.getScheduler();
+        Car[] cars = scheduler.getCars();
+        int[] path = new int[routing.getVertexCount()];
+
+        // 先算出 JGraphT 的结果作为对照，同时预热
+        int[][] expected = new int[cars.length][];
+        double[] expectedCost = new double[cars.length];
+        for (int c = 0; c < cars.length; c++) {
+            GraphPath<CrossRoads, RoadEdge> p = DijkstraShortestPath.findPathBetween(graph,
+                    scheduler.getCrossByIndex(cars[c].getFromIndex()), scheduler.getCrossByIndex(cars[c].getToIndex()));
+            expected[c] = new int[p.getLength()];
+            for (int k = 0; k < expected[c].length; k++) {
+                expected[c][k] = p.getEdgeList().get(k).routingIndex;
+                expectedCost[c] += routing.getWeight(expected[c][k]);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (Car car : cars) {
+                DijkstraShortestPath.findPathBetween(graph,
+                        scheduler.getCrossByIndex(car.getFromIndex()), scheduler.getCrossByIndex(car.getToIndex()));
+            }
+        }
+        long jgrapht = System.nanoTime() - start;
+
+        boolean dial = routing.isDial();
+        routing.setDial(false);
+        long fibonacci = time(routing, cars, path, rounds);
+        int fibonacciDiff = compare(routing, cars, path, expected, expectedCost);
+        routing.setDial(true);
+        long fallbacks = routing.getDialFallbackCount();
+        long dialTime = time(routing, cars, path, rounds);
+        fallbacks = routing.getDialFallbackCount() - fallbacks;
+        boolean usesDial = routing.usesDial();
+        int dialDiff = compare(routing, cars, path, expected, expectedCost);
+        routing.setDial(dial);
+        routing.setBatch(true);
+        long searches = routing.getSearchCount();
+        long batch = time(routing, cars, path, rounds);
+        searches = routing.getSearchCount() - searches;
+        int batchDiff = compare(routing, cars, path, expected, expectedCost);
+        routing.setBatch(false);
+        boolean treeCache = routing.isTreeCache();
+        routing.setTreeCache(true);
+        long tree = time(routing, cars, path, rounds);
+        int treeDiff = compare(routing, cars, path, expected, expectedCost);
+        routing.setTreeCache(treeCache);
+
+        long queries = (long) rounds * cars.length;
+        System.out.println(name + ": " + cars.length + " queries x " + rounds
+                + "  jgrapht " + perQuery(jgrapht, queries)
+                + "  fibonacci " + perQuery(fibonacci, queries) + " (" + fibonacciDiff + " different paths)"
+                + "  dial " + perQuery(dialTime, queries) + " (" + dialDiff + " different paths, " + fallbacks + " fell back to fibonacci"
+                + (usesDial ? "" : ", non-integer weights, fell back to fibonacci") + ")"
+                + "  batch " + perQuery(batch, queries) + " (" + searches + " searches, " + batchDiff + " different paths)"
+                + "  tree " + perQuery(tree, queries) + " (" + treeDiff + " different paths, same cost)");
+        if (fibonacciDiff != 0 || dialDiff != 0 || batchDiff != 0) {
+            System.err.println("RoutingBenchmark#error: fibonacci, dial or batch paths differ from jgrapht");
+            failed = true;
+        }
+    }
+
+    // 每一轮先切换一批边的权重再查询全部车辆，树的修补时间计入查询
+    private static void churn(String name, TrafficMap trafficMap, int rounds) {
+        Graph<CrossRoads, RoadEdge> graph = trafficMap.getGraph();
+        RoutingGraph routing = trafficMap.getRouting();
+        Car[] cars = trafficMap.getScheduler().getCars();
+        int[] path = new int[routing.getVertexCount()];
+        double[] original = new double[routing.getEdgeCount()];
+        for (int e = 0; e < original.length; e++) {
+            original[e] = routing.getWeight(e);
+        }
+
+        boolean treeCache = routing.isTreeCache();
+        long[] nanos = new long[2];
+        double[][] costs = new double[2][cars.length];
+        for (int mode = 0; mode < 2; mode++) {
+            routing.setTreeCache(mode == 1);
+            // 预热一轮
+            for (Car car : cars) {
+                routing.shortestPath(car.getFromIndex(), car.getToIndex(), path);
+            }
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int e = 0; e < original.length; e++) {
+                    if ((e + r) % CHURN_STRIDE == 0)
+                        setWeight(graph, routing, e, CONGESTED_WEIGHT);
+                    else if ((e + r - 1) % CHURN_STRIDE == 0)
+                        setWeight(graph, routing, e, original[e]);
+                }
+                for (int c = 0; c < cars.length; c++) {
+                    int length = routing.shortestPath(cars[c].getFromIndex(), cars[c].getToIndex(), path);
+                    double cost = 0;
+                    for (int k = 0; k < length; k++) {
+                        cost += routing.getWeight(path[k]);
+                    }
+                    costs[mode][c] = cost;
+                }
+            }
+            nanos[mode] = System.nanoTime() - start;
+            for (int e = 0; e < original.length; e++) {
+                setWeight(graph, routing, e, original[e]);
+            }
+        }
+        routing.setTreeCache(treeCache);
+
+        for (int c = 0; c < cars.length; c++) {
+            if (costs[0][c] != costs[1][c]) {
+                System.err.println("RoutingBenchmark#error: car " + cars[c].getId() + " tree cost " + costs[1][c] + ", expected " + costs[0][c]);
+                failed = true;
+            }
+        }
+        long queries = (long) rounds * cars.length;
+        System.out.println(name + ": " + cars.length + " queries x " + rounds + ", " + (original.length / CHURN_STRIDE) + " edges toggled per round"
+                + "  fibonacci " + perQuery(nanos[0], queries) + "  tree " + perQuery(nanos[1], queries));
+    }
+
+    private static void setWeight(Graph<CrossRoads, RoadEdge> graph, RoutingGraph routing, int e, double weight) {
+        graph.setEdgeWeight(routing.getEdge(e), weight);
+        routing.setWeight(routing.getEdge(e), weight);
+    }
+
+    private static long time(RoutingGraph routing, Car[] cars, int[] path, int rounds) {
+        // 预热一轮
+        for (Car car : cars) {
+            routing.shortestPath(car.getFromIndex(), car.getToIndex(), path);
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (Car car : cars) {
+                routing.shortestPath(car.getFromIndex(), car.getToIndex(), path);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 返回路径与 JGraphT 不同的查询数，路径长度不同时报错
+    private static int compare(RoutingGraph routing, Car[] cars, int[] path, int[][] expected, double[] expectedCost) {
+        int different = 0;
+        for (int c = 0; c < cars.length; c++) {
+            int length = routing.shortestPath(cars[c].getFromIndex(), cars[c].getToIndex(), path);
+            double cost = 0;
+            boolean same = length == expected[c].length;
+            for (int k = 0; k < length; k++) {
+                cost += routing.getWeight(path[k]);
+                if (same && path[k] != expected[c][k])
+                    same = false;
+            }
+            if (!same)
+                different++;
+            if (cost != expectedCost[c]) {
+                System.err.println("RoutingBenchmark#error: car " + cars[c].getId() + " cost " + cost + ", expected " + expectedCost[c]);
+                failed = true;
+            }
+        }
+        return different;
+    }
+
+    private static String perQuery(long nanos, long queries) {
+        return String.format("%.2fus", nanos / 1000.0 / queries);
+    }
+}
@@ -0,0 +1,248 @@
+package com.huawei;
+
+import java.util.Arrays;
+
+// 按终点缓存的最短路径树。每个终点 t 一棵反向树：distance[t][v] 是 v 到 t 的距离，next[t][v] 是 v 沿最短路径走的第一条边，
+// 查询只需沿 next 走到终点。第一次查询某个终点时在入边上反向做一次 Dijkstra 建树。
+// 之后边的权重变化先记在日志里，查询到该终点时再修补 (Ramalingam–Reps)：挂在变化的树边下面的子树作废，
+// 由子树外的邻居重新算距离，再从这些顶点和权重变化的非树边出发按 Dijkstra 向上传播。
+// 得到的一定是最短路径，但相同距离时选哪一条取决于建树以后权重变化的历史，不保证与 JGraphT 相同
+public class RoutingCache {
+
+    private static final int NONE = -1;
+
+    private final RoutingGraph graph;
+    private final int vertexCount;
+
+    // 按终点的稠密下标，还没查询过的终点为 null
+    private final double[][] distance;
+    private final int[][] next;
+    // 该终点的树已经处理到日志的哪个位置，-1 表示要重建
+    private final int[] synced;
+
+    // 权重变化的边，写满后清空，所有的树改为下次查询时重建
+    private final int[] changeLog;
+    private int changeCount = 0;
+
+    // 修补时用：edgeStamp 去掉日志里重复的边，affected/unaffected 标记子树是否作废
+    private final int[] edgeStamp;
+    private final int[] affected;
+    private final int[] unaffected;
+    private final int[] stack;
+    private int stamp = 0;
+
+    // 以 distance[t] 为键的二叉堆，position[v] 是 v 在堆中的位置，不在堆中为 -1
+    private final int[] heap;
+    private final int[] position;
+    private int heapSize = 0;
+
+    public RoutingCache(RoutingGraph graph) {
+        this.graph = graph;
+        vertexCount = graph.getVertexCount();
+        int edgeCount = graph.getEdgeCount();
+        distance = new double[vertexCount][];
+        next = new int[vertexCount][];
+        synced = new int[vertexCount];
+        changeLog = new int[Math.max(16, edgeCount * 4)];
+        edgeStamp = new int[edgeCount];
+        affected = new int[vertexCount];
+        unaffected = new int[vertexCount];
+        stack = new int[vertexCount];
+        heap = new int[vertexCount];
+        position = new int[vertexCount];
+        Arrays.fill(position, NONE);
+    }
+
+    // 与 RoutingGraph.shortestPath 相同的约定：边下标写入 path，返回边数，不连通时返回 -1
+    public int shortestPath(int from, int to, int[] path) {
+        if (from == to)
+            return 0;
+        sync(to);
+        if (distance[to][from] == Double.POSITIVE_INFINITY)
+            return -1;
+        int[] tree = next[to];
+        int length = 0;
+        for (int v = from; v != to; v = graph.getTarget(tree[v])) {
+            path[length++] = tree[v];
+        }
+        return length;
+    }
+
+    // 边 e 的权重变了
+    public void edgeChanged(int e) {
+        if (changeCount == changeLog.length) {
+            changeCount = 0;
+            Arrays.fill(synced, -1);
+        }
+        changeLog[changeCount++] = e;
+    }
+
+    private void sync(int t) {
+        if (distance[t] == null) {
+            distance[t] = new double[vertexCount];
+            next[t] = new int[vertexCount];
+            synced[t] = -1;
+        }
+        if (synced[t] < 0)
+            build(t);
+        else if (synced[t] < changeCount)
+            repair(t, synced[t]);
+        synced[t] = changeCount;
+    }
+
+    private void build(int t) {
+        double[] dist = distance[t];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(next[t], NONE);
+        dist[t] = 0.0;
+        push(dist, t);
+        propagate(dist, next[t]);
+    }
+
+    private void repair(int t, int logStart) {
+        double[] dist = distance[t];
+        int[] tree = next[t];
+        stamp++;
+
+        // 变化的树边 u -> w，u 的子树作废
+        for (int i = logStart; i < changeCount; i++) {
+            int e = changeLog[i];
+            int u = graph.getSource(e);
+            if (tree[u] == e)
+                affected[u] = stamp;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            markSubtree(tree, v);
+        }
+
+        for (int v = 0; v < vertexCount; v++) {
+            if (affected[v] == stamp) {
+                dist[v] = Double.POSITIVE_INFINITY;
+                tree[v] = NONE;
+            }
+        }
+        // 作废的顶点先从子树外的出边取最小值
+        for (int v = 0; v < vertexCount; v++) {
+            if (affected[v] != stamp)
+                continue;
+            for (int e = graph.getOutBegin(v); e < graph.getOutEnd(v); e++) {
+                int x = graph.getTarget(e);
+                if (affected[x] == stamp)
+                    continue;
+                double d = dist[x] + graph.getWeight(e);
+                if (d < dist[v]) {
+                    dist[v] = d;
+                    tree[v] = e;
+                }
+            }
+            if (dist[v] != Double.POSITIVE_INFINITY)
+                push(dist, v);
+        }
+        // 变短的非树边可能让起点的距离变小
+        for (int i = logStart; i < changeCount; i++) {
+            int e = changeLog[i];
+            if (edgeStamp[e] == stamp)
+                continue;
+            edgeStamp[e] = stamp;
+            int u = graph.getSource(e);
+            if (affected[u] == stamp)
+                continue;
+            double d = dist[graph.getTarget(e)] + graph.getWeight(e);
+            if (d < dist[u]) {
+                dist[u] = d;
+                tree[u] = e;
+                push(dist, u);
+            }
+        }
+        propagate(dist, tree);
+    }
+
+    // 沿 next 向终点走，路上遇到作废的顶点则整条链都作废，每个顶点只走一次
+    private void markSubtree(int[] tree, int v) {
+        int top = 0;
+        while (affected[v] != stamp && unaffected[v] != stamp && tree[v] != NONE) {
+            stack[top++] = v;
+            v = graph.getTarget(tree[v]);
+        }
+        boolean inSubtree = affected[v] == stamp;
+        while (top > 0) {
+            int u = stack[--top];
+            if (inSubtree)
+                affected[u] = stamp;
+            else
+                unaffected[u] = stamp;
+        }
+    }
+
+    // 反向 Dijkstra：取出距离最小的顶点，松弛它的入边
+    private void propagate(double[] dist, int[] tree) {
+        while (heapSize > 0) {
+            int v = pop(dist);
+            for (int i = graph.getInBegin(v); i < graph.getInEnd(v); i++) {
+                int e = graph.getInEdge(i);
+                int y = graph.getSource(e);
+                double d = dist[v] + graph.getWeight(e);
+                if (d < dist[y]) {
+                    dist[y] = d;
+                    tree[y] = e;
+                    push(dist, y);
+                }
+            }
+        }
+    }
+
+    // 放入堆，已经在堆中时按变小的键上移
+    private void push(double[] dist, int v) {
+        int i = position[v];
+        if (i == NONE) {
+            i = heapSize++;
+            heap[i] = v;
+            position[v] = i;
+        }
+        siftUp(dist, i);
+    }
+
+    private int pop(double[] dist) {
+        int min = heap[0];
+        position[min] = NONE;
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            position[heap[0]] = 0;
+            siftDown(dist, 0);
+        }
+        return min;
+    }
+
+    private void siftUp(double[] dist, int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (dist[heap[p]] <= dist[v])
+                break;
+            heap[i] = heap[p];
+            position[heap[i]] = i;
+            i = p;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+
+    private void siftDown(double[] dist, int i) {
+        int v = heap[i];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= heapSize)
+                break;
+            if (c + 1 < heapSize && dist[heap[c + 1]] < dist[heap[c]])
+                c++;
+            if (dist[v] <= dist[heap[c]])
+                break;
+            heap[i] = heap[c];
+            position[heap[i]] = i;
+            i = c;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+}
@@ -0,0 +1,658 @@
+package com.huawei;
+
+import org.jgrapht.Graph;
+
+import java.util.Arrays;
+
+// TrafficMap 道路图的压缩稀疏行 (CSR) 表示，顶点是路口的稠密下标。
+// 顶点 v 的出边是 [offsets[v], offsets[v + 1])，顺序与 JGraphT 的 outgoingEdgesOf 相同；
+// 最短路径用数组实现的斐波那契堆，插入、删除最小、合并和减小键值的每一步都与 org.jgrapht.util.FibonacciHeap 相同，
+// 相同距离时选出的路径与 DijkstraShortestPath.findPathBetween 完全相同。权重都是整数时可以改用 Dial 桶队列 (setDial)
+// 求距离，再按堆的规则确定前驱，路径也与 JGraphT 相同；按终点缓存的最短路径树 (setTreeCache) 只保证距离相同。
+// 搜索用的数组在查询之间复用，查询时不分配内存
+public class RoutingGraph {
+
+    private static final int NONE = -1;
+
+    private final int vertexCount;
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] targets;
+    private final double[] weights;
+    private final RoadEdge[] edges;
+    // 权重是不大于 MAX_INT_WEIGHT 的非负整数时的整数值，否则为 -1；nonIntegerWeights 是 -1 的条数
+    private final int[] intWeights;
+    private int nonIntegerWeights;
+    // 入边：顶点 v 的入边下标是 inEdges[inOffsets[v] .. inOffsets[v + 1])，按边下标升序
+    private final int[] inOffsets;
+    private final int[] inEdges;
+
+    private static final double ONE_OVER_LOG_PHI = 1.0 / Math.log((1.0 + Math.sqrt(5.0)) / 2.0);
+
+    // 斐波那契堆，节点就是顶点：left/right 是所在环形链表的兄弟，child 是任意一个孩子
+    private final double[] key;
+    private final int[] left;
+    private final int[] right;
+    private final int[] parent;
+    private final int[] child;
+    private final int[] degree;
+    private final boolean[] mark;
+    private int minNode = NONE;
+    private int size = 0;
+    // 合并时按度数存放根，用完都恢复为 NONE
+    private final int[] byDegree;
+
+    // Dial 桶队列：距离在 [current, current + BUCKETS) 内的顶点按 distance % BUCKETS 放在环形的桶里，
+    // 更远的 (比如经过 99999 的拥堵边) 放在溢出桶，窗口移过去时再移回环里。每个桶是顶点的双向链表
+    private static final int MAX_INT_WEIGHT = 1 << 20;
+    private static final int BUCKETS = 256;
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    private static final int OVERFLOW = BUCKETS;
+    private boolean dial = false;
+    // 不为 null 时按终点缓存最短路径树，见 RoutingCache
+    private RoutingCache treeCache;
+    // 不为 null 时按起点缓存整棵最短路径树，见 RoutingBatch
+    private RoutingBatch batch;
+    // 权重或搜索方式每变一次加 1，按起点缓存的树以此判断是否过期
+    private long version = 0;
+    // 做过的搜索次数
+    private long searchCount = 0;
+    // Dial 搜索后前驱不能确定、改用斐波那契堆的次数
+    private long dialFallbackCount = 0;
+    private final long[] distance;
+    private final int[] bucketOf;
+    private final int[] bucketNext;
+    private final int[] bucketPrev;
+    private final int[] bucketHead = new int[BUCKETS + 1];
+    private final int[] bucketTail = new int[BUCKETS + 1];
+    private int inRing;
+    private int overflowSize;
+    private long overflowMin;
+    private long current;
+
+    // 到达顶点的边；seen[v] == stamp 表示本次查询已经访问过 v
+    private final int[] predEdge;
+    private final int[] seen;
+    private int stamp = 0;
+
+    private RoutingGraph(int vertexCount, int edgeCount) {
+        this.vertexCount = vertexCount;
+        offsets = new int[vertexCount + 1];
+        sources = new int[edgeCount];
+        targets = new int[edgeCount];
+        weights = new double[edgeCount];
+        intWeights = new int[edgeCount];
+        // 还没有设置的边按非整数计，build 时逐条设置
+        Arrays.fill(intWeights, -1);
+        nonIntegerWeights = edgeCount;
+        inOffsets = new int[vertexCount + 1];
+        inEdges = new int[edgeCount];
+        edges = new RoadEdge[edgeCount];
+        key = new double[vertexCount];
+        left = new int[vertexCount];
+        right = new int[vertexCount];
+        parent = new int[vertexCount];
+        child = new int[vertexCount];
+        degree = new int[vertexCount];
+        mark = new boolean[vertexCount];
+        // 度数不超过 log_phi(n)
+        byDegree = new int[(int) (Math.log(vertexCount + 1) * ONE_OVER_LOG_PHI) + 2];
+        Arrays.fill(byDegree, NONE);
+        distance = new long[vertexCount];
+        bucketOf = new int[vertexCount];
+        bucketNext = new int[vertexCount];
+        bucketPrev = new int[vertexCount];
+        predEdge = new int[vertexCount];
+        seen = new int[vertexCount];
+    }
+
+    // crosses 按稠密下标排列，图中的路口都要在里面
+    public static RoutingGraph build(Graph<CrossRoads, RoadEdge> graph, CrossRoads[] crosses) {
+        RoutingGraph routing = new RoutingGraph(crosses.length, graph.edgeSet().size());
+        int e = 0;
+        for (int v = 0; v < crosses.length; v++) {
+            routing.offsets[v] = e;
+            if (!graph.containsVertex(crosses[v]))
+                continue;
+            for (RoadEdge edge : graph.outgoingEdgesOf(crosses[v])) {
+                routing.sources[e] = v;
+                routing.targets[e] = graph.getEdgeTarget(edge).getIndex();
+                routing.setWeight(e, graph.getEdgeWeight(edge));
+                routing.edges[e] = edge;
+                edge.routingIndex = e;
+                e++;
+            }
+        }
+        routing.offsets[crosses.length] = e;
+
+        // 按终点计数排序得到入边
+        for (int i = 0; i < e; i++) {
+            routing.inOffsets[routing.targets[i] + 1]++;
+        }
+        for (int v = 0; v < crosses.length; v++) {
+            routing.inOffsets[v + 1] += routing.inOffsets[v];
+        }
+        int[] fill = Arrays.copyOf(routing.inOffsets, crosses.length);
+        for (int i = 0; i < e; i++) {
+            routing.inEdges[fill[routing.targets[i]]++] = i;
+        }
+        return routing;
+    }
+
+    // 不在图中的边 (已被替换或还没有加入) 忽略
+    public void setWeight(RoadEdge edge, double weight) {
+        int e = edge.routingIndex;
+        if (e < 0 || e >= edges.length || edges[e] != edge || weights[e] == weight)
+            return;
+        setWeight(e, weight);
+        version++;
+        if (treeCache != null)
+            treeCache.edgeChanged(e);
+    }
+
+    private void setWeight(int e, double weight) {
+        if (intWeights[e] < 0)
+            nonIntegerWeights--;
+        weights[e] = weight;
+        intWeights[e] = weight >= 0 && weight <= MAX_INT_WEIGHT && weight == Math.floor(weight) ? (int) weight : -1;
+        if (intWeights[e] < 0)
+            nonIntegerWeights++;
+    }
+
+    public RoadEdge getEdge(int e) {
+        return edges[e];
+    }
+
+    public double getWeight(int e) {
+        return weights[e];
+    }
+
+    public int getSource(int e) {
+        return sources[e];
+    }
+
+    public int getTarget(int e) {
+        return targets[e];
+    }
+
+    // 顶点 v 的出边下标是 [getOutBegin(v), getOutEnd(v))
+    public int getOutBegin(int v) {
+        return offsets[v];
+    }
+
+    public int getOutEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    // 顶点 v 的入边是 getInEdge(i)，i 在 [getInBegin(v), getInEnd(v)) 内
+    public int getInBegin(int v) {
+        return inOffsets[v];
+    }
+
+    public int getInEnd(int v) {
+        return inOffsets[v + 1];
+    }
+
+    public int getInEdge(int i) {
+        return inEdges[i];
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getEdgeCount() {
+        return edges.length;
+    }
+
+    public boolean isDial() {
+        return dial;
+    }
+
+    // 打开后所有权重都是不大于 MAX_INT_WEIGHT 的非负整数时用 Dial 桶队列，否则仍用斐波那契堆。两者选出的路径相同
+    public void setDial(boolean dial) {
+        if (this.dial != dial)
+            version++;
+        this.dial = dial;
+    }
+
+    public boolean isTreeCache() {
+        return treeCache != null;
+    }
+
+    // 打开后查询由 RoutingCache 的最短路径树回答
+    public void setTreeCache(boolean enabled) {
+        if (!enabled)
+            treeCache = null;
+        else if (treeCache == null)
+            treeCache = new RoutingCache(this);
+    }
+
+    public boolean isBatch() {
+        return batch != null;
+    }
+
+    // 打开后同一个起点在权重不变期间只搜索一次，见 RoutingBatch
+    public void setBatch(boolean enabled) {
+        if (!enabled)
+            batch = null;
+        else if (batch == null)
+            batch = new RoutingBatch(this);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getSearchCount() {
+        return searchCount;
+    }
+
+    public long getDialFallbackCount() {
+        return dialFallbackCount;
+    }
+
+    // 当前的查询是否会用 Dial 桶队列
+    public boolean usesDial() {
+        return dial && nonIntegerWeights == 0;
+    }
+
+    // 把 from 到 to 的最短路径上的边下标按顺序写入 path，返回边数。不连通时返回 -1。
+    // path 的长度不能小于顶点数
+    public int shortestPath(int from, int to, int[] path) {
+        if (from == to)
+            return 0;
+        if (treeCache != null)
+            return treeCache.shortestPath(from, to, path);
+        if (batch != null)
+            return batch.shortestPath(from, to, path);
+        boolean reached = false;
+        boolean done = false;
+        if (usesDial()) {
+            startSearch(from);
+            reached = searchDial(from, to);
+            // 路径上的前驱都能按距离确定时直接用，否则用斐波那契堆重新搜索
+            done = !reached || heapPredecessors(from, to);
+        }
+        if (!done) {
+            startSearch(from);
+            reached = searchFibonacci(from, to);
+        }
+        if (!reached)
+            return -1;
+
+        int length = 0;
+        for (int v = to; v != from; v = sources[predEdge[v]]) {
+            length++;
+        }
+        int i = length;
+        for (int v = to; v != from; v = sources[predEdge[v]]) {
+            path[--i] = predEdge[v];
+        }
+        return length;
+    }
+
+    // 从 from 出发搜索整张图，pred[v] 是 from 到 v 的最短路径上到达 v 的边，from 自己和不可达的顶点为 -1。
+    // 顶点出堆后前驱不再变化，而到终点为止的每一步都与 shortestPath 相同，所以树上到每个顶点的路径与 shortestPath 的结果相同
+    public void shortestPathTree(int from, int[] pred) {
+        boolean done = false;
+        if (usesDial()) {
+            startSearch(from);
+            searchDial(from, NONE);
+            done = true;
+            for (int v = 0; v < vertexCount && done; v++) {
+                if (v != from && seen[v] == stamp)
+                    done = heapPredecessor(v);
+            }
+        }
+        if (!done) {
+            startSearch(from);
+            searchFibonacci(from, NONE);
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            pred[v] = seen[v] == stamp ? predEdge[v] : NONE;
+        }
+    }
+
+    private void startSearch(int from) {
+        stamp++;
+        seen[from] = stamp;
+        predEdge[from] = NONE;
+    }
+
+    // 把 Dial 搜索得到的 to 到 from 路径上的前驱改成斐波那契堆会选的边，有不能确定的顶点时返回 false
+    private boolean heapPredecessors(int from, int to) {
+        for (int v = to; v != from; v = sources[predEdge[v]]) {
+            if (!heapPredecessor(v))
+                return false;
+        }
+        return true;
+    }
+
+    // 斐波那契堆的搜索中，顶点的前驱是第一次把它松弛到最终距离的边。松弛按起点出堆的顺序发生，
+    // 距离不同的顶点按距离从小到大出堆，所以前驱是紧的入边 (起点距离 + 权重 = 终点距离) 中起点距离最小的一条。
+    // 距离最小的起点不止一个，或者起点与终点距离相同 (权重为 0) 时，出堆顺序取决于堆的形状，返回 false。
+    // v 的距离不超过 Dial 搜索停下时的距离，比它近的顶点都已经出队，距离是最终值
+    private boolean heapPredecessor(int v) {
+        int best = NONE;
+        boolean tie = false;
+        for (int i = inOffsets[v]; i < inOffsets[v + 1]; i++) {
+            int e = inEdges[i];
+            int y = sources[e];
+            if (seen[y] != stamp || distance[y] + intWeights[e] != distance[v])
+                continue;
+            if (best == NONE || distance[y] < distance[sources[best]]) {
+                best = e;
+                tie = false;
+            } else if (distance[y] == distance[sources[best]]) {
+                tie = true;
+            }
+        }
+        if (best == NONE || tie || distance[sources[best]] == distance[v]) {
+            dialFallbackCount++;
+            return false;
+        }
+        predEdge[v] = best;
+        return true;
+    }
+
+    // to 为 NONE 时搜索整张图
+    private boolean searchFibonacci(int from, int to) {
+        searchCount++;
+        minNode = NONE;
+        size = 0;
+        insert(from, 0.0);
+        while (minNode != NONE) {
+            int v = removeMin();
+            double distance = key[v];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int u = targets[e];
+                double d = distance + weights[e];
+                if (seen[u] != stamp) {
+                    seen[u] = stamp;
+                    predEdge[u] = e;
+                    insert(u, d);
+                } else if (d < key[u]) {
+                    decreaseKey(u, d);
+                    predEdge[u] = e;
+                }
+            }
+            if (v == to)
+                return true;
+        }
+        return false;
+    }
+
+    // 只求距离，相同距离时前驱由 heapPredecessor 按斐波那契堆的规则重新确定
+    private boolean searchDial(int from, int to) {
+        searchCount++;
+        Arrays.fill(bucketHead, NONE);
+        Arrays.fill(bucketTail, NONE);
+        inRing = 0;
+        overflowSize = 0;
+        overflowMin = Long.MAX_VALUE;
+        current = 0;
+        distance[from] = 0;
+        enqueue(from);
+        for (int v = nextInRing(); v != NONE; v = nextInRing()) {
+            long base = distance[v];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int u = targets[e];
+                long d = base + intWeights[e];
+                if (seen[u] != stamp) {
+                    seen[u] = stamp;
+                    predEdge[u] = e;
+                    distance[u] = d;
+                    enqueue(u);
+                } else if (d < distance[u]) {
+                    dequeue(u);
+                    distance[u] = d;
+                    predEdge[u] = e;
+                    enqueue(u);
+                }
+            }
+            if (v == to)
+                return true;
+        }
+        return false;
+    }
+
+    // 取出距离最小的顶点，没有时返回 NONE
+    private int nextInRing() {
+        while (true) {
+            if (inRing == 0) {
+                if (overflowSize == 0)
+                    return NONE;
+                // 环里已经空了，直接跳到溢出桶里最近的距离
+                current = overflowMin;
+                pullOverflow();
+                continue;
+            }
+            int slot = (int) (current & BUCKET_MASK);
+            int v = bucketHead[slot];
+            if (v != NONE) {
+                dequeue(v);
+                return v;
+            }
+            current++;
+            if (overflowSize > 0 && overflowMin < current + BUCKETS)
+                pullOverflow();
+        }
+    }
+
+    // 溢出桶中进入窗口 [current, current + BUCKETS) 的顶点移回环里，并重新计算剩下的最小距离
+    private void pullOverflow() {
+        long min = Long.MAX_VALUE;
+        int v = bucketHead[OVERFLOW];
+        while (v != NONE) {
+            int next = bucketNext[v];
+            if (distance[v] < current + BUCKETS) {
+                dequeue(v);
+                enqueue(v);
+            } else {
+                min = Math.min(min, distance[v]);
+            }
+            v = next;
+        }
+        overflowMin = min;
+    }
+
+    // 放到所属桶的末尾
+    private void enqueue(int v) {
+        long d = distance[v];
+        int b;
+        if (d - current < BUCKETS) {
+            b = (int) (d & BUCKET_MASK);
+            inRing++;
+        } else {
+            b = OVERFLOW;
+            overflowSize++;
+            overflowMin = Math.min(overflowMin, d);
+        }
+        bucketOf[v] = b;
+        bucketNext[v] = NONE;
+        bucketPrev[v] = bucketTail[b];
+        if (bucketTail[b] != NONE)
+            bucketNext[bucketTail[b]] = v;
+        else
+            bucketHead[b] = v;
+        bucketTail[b] = v;
+    }
+
+    // 从所在的桶中摘下。溢出桶的 overflowMin 只会偏小，下次移动时重新计算
+    private void dequeue(int v) {
+        int b = bucketOf[v];
+        if (bucketPrev[v] != NONE)
+            bucketNext[bucketPrev[v]] = bucketNext[v];
+        else
+            bucketHead[b] = bucketNext[v];
+        if (bucketNext[v] != NONE)
+            bucketPrev[bucketNext[v]] = bucketPrev[v];
+        else
+            bucketTail[b] = bucketPrev[v];
+        if (b == OVERFLOW)
+            overflowSize--;
+        else
+            inRing--;
+    }
+
+    // 加入根链表，位置在 minNode 的右边
+    private void insert(int v, double k) {
+        key[v] = k;
+        parent[v] = NONE;
+        child[v] = NONE;
+        degree[v] = 0;
+        mark[v] = false;
+        if (minNode != NONE) {
+            addToRoots(v);
+            if (k < key[minNode])
+                minNode = v;
+        } else {
+            left[v] = v;
+            right[v] = v;
+            minNode = v;
+        }
+        size++;
+    }
+
+    private int removeMin() {
+        int z = minNode;
+        // z 的孩子依次移到根链表
+        int x = child[z];
+        for (int kids = degree[z]; kids > 0; kids--) {
+            int tempRight = right[x];
+            unlink(x);
+            addToRoots(x);
+            parent[x] = NONE;
+            x = tempRight;
+        }
+        unlink(z);
+        if (z == right[z]) {
+            minNode = NONE;
+        } else {
+            minNode = right[z];
+            consolidate();
+        }
+        size--;
+        return z;
+    }
+
+    private void consolidate() {
+        // 大小与 JGraphT 相同，此时 size 还包含刚删除的节点
+        int arraySize = ((int) Math.floor(Math.log(size) * ONE_OVER_LOG_PHI)) + 1;
+
+        int roots = 0;
+        int x = minNode;
+        if (x != NONE) {
+            roots++;
+            x = right[x];
+            while (x != minNode) {
+                roots++;
+                x = right[x];
+            }
+        }
+        // 度数相同的根两两连接，键值大的做孩子
+        for (; roots > 0; roots--) {
+            int d = degree[x];
+            int next = right[x];
+            for (;;) {
+                int y = byDegree[d];
+                if (y == NONE)
+                    break;
+                if (key[x] > key[y]) {
+                    int t = y;
+                    y = x;
+                    x = t;
+                }
+                link(y, x);
+                byDegree[d] = NONE;
+                d++;
+            }
+            byDegree[d] = x;
+            x = next;
+        }
+        // 按度数从小到大重新串成根链表并找出最小的根
+        minNode = NONE;
+        for (int i = 0; i < arraySize; i++) {
+            int y = byDegree[i];
+            if (y == NONE)
+                continue;
+            byDegree[i] = NONE;
+            if (minNode != NONE) {
+                unlink(y);
+                addToRoots(y);
+                if (key[y] < key[minNode])
+                    minNode = y;
+            } else {
+                minNode = y;
+            }
+        }
+    }
+
+    // y 从根链表中摘下，成为 x 的孩子
+    private void link(int y, int x) {
+        unlink(y);
+        parent[y] = x;
+        if (child[x] == NONE) {
+            child[x] = y;
+            right[y] = y;
+            left[y] = y;
+        } else {
+            left[y] = child[x];
+            right[y] = right[child[x]];
+            right[child[x]] = y;
+            left[right[y]] = y;
+        }
+        degree[x]++;
+        mark[y] = false;
+    }
+
+    private void decreaseKey(int x, double k) {
+        key[x] = k;
+        int y = parent[x];
+        if (y != NONE && key[x] < key[y]) {
+            cut(x, y);
+            cascadingCut(y);
+        }
+        if (key[x] < key[minNode])
+            minNode = x;
+    }
+
+    // x 从父节点 y 的孩子链表移到根链表
+    private void cut(int x, int y) {
+        unlink(x);
+        degree[y]--;
+        if (child[y] == x)
+            child[y] = right[x];
+        if (degree[y] == 0)
+            child[y] = NONE;
+        addToRoots(x);
+        parent[x] = NONE;
+        mark[x] = false;
+    }
+
+    private void cascadingCut(int y) {
+        int z = parent[y];
+        while (z != NONE) {
+            if (!mark[y]) {
+                mark[y] = true;
+                return;
+            }
+            cut(y, z);
+            y = z;
+            z = parent[y];
+        }
+    }
+
+    private void unlink(int x) {
+        right[left[x]] = right[x];
+        left[right[x]] = left[x];
+    }
+
+    private void addToRoots(int x) {
+        left[x] = minNode;
+        right[x] = right[minNode];
+        right[minNode] = x;
+        left[right[x]] = x;
+    }
+}
@@ -4,103 +4,156 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class Scheduler {
 
-    private TreeMap<Integer, CrossRoads> crossMap = new TreeMap<>();
-    private TreeMap<Integer, Road> roadMap = new TreeMap<>();
-    private TreeMap<Integer, Car> carMap = new TreeMap<>();
+    // 载入阶段按文件顺序收集，initIndex() 之后换成按 id 升序的稠密数组
+    private ArrayList<CrossRoads> crossList = new ArrayList<>();
+    private ArrayList<Road> roadList = new ArrayList<>();
+    private ArrayList<Car> carList = new ArrayList<>();
 
-    private HashMap<Long, HashMap<String, Object>> timeStateMap = new HashMap<>();
+    private CrossRoads[] crosses = new CrossRoads[0];
+    private Road[] roads = new Road[0];
+    private DirectedRoad[] directedRoads = new DirectedRoad[0];
 
-    // 基于统计的死锁检测，　若系统一段时间内状态没有发生变化，则认为是死锁
-    public static boolean carStateChanged = false;
-    public final int DEADLOCK_DETECT_THRESHOLD = 1000;
-    public int deadLockCounter = 0;
+    // 路口工作表：只有相连道路发生变化的路口才需要再次调度，下标为路口的稠密下标
+    private boolean[] dirtyCrosses = new boolean[0];
+    // 关闭后每轮都调度全部路口，用于和工作表模式对比结果
+    private boolean crossWorklist = true;
 
-    public static Long totalScheduleTime = 0L;
-    public static Long systemScheduleTime = 0L;
-    public static Long specialScheduleTime = 0L;
-    public static Long totalSpecialScheduleTime = 0L;
-    public static final int UNIT_TIME = 1;
+    // 第一阶段并行：设置了线程池且道路上的车辆数不少于 PARALLEL_PHASE_ONE_THRESHOLD 时，把行驶方向分给线程池处理。
+    // 各方向只读写自己的车道和车辆，结果与顺序处理完全相同；phaseOneCheck 打开时每个时刻两种方式都跑一遍并比较
+    public static final int PARALLEL_PHASE_ONE_THRESHOLD = 2000;
+    private ForkJoinPool phaseOnePool;
+    private boolean phaseOneCheck = false;
 
-    // factor information
-    public static Long numOfPriorityCars = 0L;
+    // 事件驱动：道路上没有车时直接跳到车库里下一辆车出发的时刻，中间的时刻不会有任何车辆移动或到达。
+    // 只用于 stepUntilFinish 这类调用者不会在时刻之间放车的循环；关闭后逐个时刻调度，用于对比结果
+    private boolean eventDriven = true;
 
-    public static int maxSpeedOfAllCars = 0;
-    public static int minSpeedOfAllCars = 999;
-    public static int maxSpeedOfPriorityCars = 0;
-    public static int minSpeedOfPriorityCars = 999;
+    // 第二阶段并行：路口 i 只和共用道路的路口相互影响。按 id 升序给路口分层，每个路口比所有 id 更小的相邻路口高一层，
+    // 同一层的路口两两不相邻，可以同时调度；逐层执行时每个路口仍在所有 id 更小的相邻路口之后、更大的之前调度，
+    // 与顺序调度的结果完全相同。状态统计在这期间加锁
+    private ForkJoinPool phaseTwoPool;
+    private int[][] crossLevels = new int[0][];
 
+    // 调试用：每个时刻结束后检查车道和车辆记录的车道、位置是否一致
+    private boolean consistencyCheck = false;
+    private Car[] cars = new Car[0];
 
-    //全局车辆状态统计
-    public static HashMap<CarState, Integer> carStateCounter = new HashMap<CarState, Integer>() {{
-        put(CarState.OFF_ROAD, 0);
-        put(CarState.WAIT, 0);
-        put(CarState.END, 0);
-        put(CarState.IN_GARAGE, 0);
-    }};
+    private IdIndex crossIndex = new IdIndex(new int[0]);
+    private IdIndex roadIndex = new IdIndex(new int[0]);
+    private IdIndex carIndex = new IdIndex(new int[0]);
+
+    // 车辆模拟字段的集中存储，下标与 cars 数组一致
+    private FleetState fleet = new FleetState(1);
+
+    // 每隔 CHECKPOINT_INTERVAL 个时刻保存一次快照，只保留最近的 CHECKPOINT_CAPACITY 个，回滚时从快照开始重放。
+    // 快照放在环形数组里，槽位在 initIndex 时按车辆数和车道数一次分配好，之后按环的顺序覆盖最旧的一个
+    public static final int CHECKPOINT_INTERVAL = 10;
+    public static final int CHECKPOINT_CAPACITY = 16;
+    private Checkpoint[] checkpoints = new Checkpoint[CHECKPOINT_CAPACITY];
+    // 最旧的快照所在的槽位和有效快照的个数
+    private int checkpointHead = 0;
+    private int checkpointCount = 0;
+
+    // 死锁检测：一轮路口调度没有任何车辆状态变化时，调度已无法推进，即为死锁
+    private DeadlockReport lastDeadlockReport;
+
+    public static final int UNIT_TIME = SimulationContext.UNIT_TIME;
+
+    // 系统时间、调度时间、车辆状态计数等全局统计，每个调度器各自一份
+    private final SimulationContext context = new SimulationContext();
 
     public void printCarStates() {
+        System.out.printf("Car State at time %d : OFF_ROAD: %d IN_GARAGE: %d WAIT: %d END: %d  \n", context.getSystemScheduleTime(), context.getCarStateCount(CarState.OFF_ROAD), context.getCarStateCount(CarState.IN_GARAGE), context.getCarStateCount(CarState.WAIT), context.getCarStateCount(CarState.END));
+        if (allCarArrived()) {
+            double[] factors = computeFactors();
+            long minPlanTimeOfPriorityCars = (long) factors[2];
+            double[] scores = getJudgeScores();
 
-        System.out.printf("Car State at time %d : OFF_ROAD: %d IN_GARAGE: %d WAIT: %d END: %d  \n", systemScheduleTime, carStateCounter.get(CarState.OFF_ROAD), carStateCounter.get(CarState.IN_GARAGE), carStateCounter.get(CarState.WAIT), carStateCounter.get(CarState.END));
-        if (carStateCounter.get(CarState.WAIT) == 0 && carStateCounter.get(CarState.END) == 0 && carStateCounter.get(CarState.IN_GARAGE) == 0) {
-            long minPlanTimeOfAllCars = 999;
-            long maxPlanTimeOfAllCars = 0;
-            long minPlanTimeOfPriorityCars = 999;
-            long maxPlanTimeOfPriorityCars = 0;
+            System.out.println("优先车辆最早计划时间: "+ minPlanTimeOfPriorityCars);
 
+            System.out.println("优先车辆调度时间: " + (context.getSpecialScheduleTime() - minPlanTimeOfPriorityCars));
+            System.out.println("优先车辆总调度时间: " + context.getTotalSpecialScheduleTime());
+            System.out.println("原系统调度时间: " + context.getSystemScheduleTime());
+            System.out.println("原所有车辆实际总调度时间: " + context.getTotalScheduleTime());
+            System.out.println("系统调度时间: " + (long) scores[0]);
+            System.out.println("所有车辆实际总调度时间: " + scores[1]);
 
-            Set allCarStartDistribute = new HashSet();
-            Set allCarEndDistribute = new HashSet();
+        }
+    }
 
-            Set priorityCarStartDistribute = new HashSet();
-            Set priorityCarEndDistribute = new HashSet();
+    public boolean allCarArrived() {
+        return context.getCarStateCount(CarState.WAIT) == 0 && context.getCarStateCount(CarState.END) == 0 && context.getCarStateCount(CarState.IN_GARAGE) == 0;
+    }
 
-            int priorityCarCount = 0;
+    // 判题器的两个分数 {系统调度时间, 所有车辆实际总调度时间}，所有车辆到达终点之后才有意义
+    public double[] getJudgeScores() {
+        double[] factors = computeFactors();
+        long minPlanTimeOfPriorityCars = (long) factors[2];
+        return new double[]{
+                Math.round(context.getSystemScheduleTime() + factors[0] * (context.getSpecialScheduleTime() - minPlanTimeOfPriorityCars)),
+                context.getTotalScheduleTime() + formatFive(factors[1]) * context.getTotalSpecialScheduleTime()
+        };
+    }
 
-            for (Car car : carMap.values()) {
-                if (car.isPriority() && car.getPlanTime() < minPlanTimeOfPriorityCars)
-                    minPlanTimeOfPriorityCars = car.getPlanTime();
-                if (car.getPlanTime() < minPlanTimeOfAllCars)
-                    minPlanTimeOfAllCars = car.getPlanTime();
+    // {factorA, factorB, 优先车辆最早计划时间}
+    private double[] computeFactors() {
+        long numOfPriorityCars = context.getNumOfPriorityCars();
+        int maxSpeedOfAllCars = context.getMaxSpeedOfAllCars();
+        int minSpeedOfAllCars = context.getMinSpeedOfAllCars();
+        int maxSpeedOfPriorityCars = context.getMaxSpeedOfPriorityCars();
+        int minSpeedOfPriorityCars = context.getMinSpeedOfPriorityCars();
 
-                if (car.isPriority() && car.getPlanTime() > maxPlanTimeOfPriorityCars)
-                    maxPlanTimeOfPriorityCars = car.getPlanTime();
-                if (car.getPlanTime() > maxPlanTimeOfAllCars)
-                    maxPlanTimeOfAllCars = car.getPlanTime();
+        long minPlanTimeOfAllCars = 999;
+        long maxPlanTimeOfAllCars = 0;
+        long minPlanTimeOfPriorityCars = 999;
+        long maxPlanTimeOfPriorityCars = 0;
 
-                allCarStartDistribute.add(car.getFrom());
-                allCarEndDistribute.add(car.getTo());
-                if (car.isPriority()) {
-                    priorityCarStartDistribute.add(car.getFrom());
-                    priorityCarEndDistribute.add(car.getTo());
-                    priorityCarCount++;
-                }
-            }
 
-            double factorA = (formatFive(carMap.size() / (numOfPriorityCars * 1.0))) * 0.05 +
-                    formatFive(formatFive(maxSpeedOfAllCars * 1.0 / minSpeedOfAllCars) / formatFive(maxSpeedOfPriorityCars * 1.0 / minSpeedOfPriorityCars)) * 0.2375 +
-                    formatFive(formatFive(maxPlanTimeOfAllCars * 1.0 / minPlanTimeOfAllCars) / formatFive(maxPlanTimeOfPriorityCars * 1.0 / minPlanTimeOfPriorityCars)) * 0.2375 +
-                    formatFive(allCarStartDistribute.size() * 1.0 / priorityCarStartDistribute.size()) * 0.2375 +
-                    formatFive(allCarEndDistribute.size() * 1.0 / priorityCarEndDistribute.size()) * 0.2375;
+        Set allCarStartDistribute = new HashSet();
+        Set allCarEndDistribute = new HashSet();
 
-            double factorB = formatFive(carMap.size() / (numOfPriorityCars * 1.0)) * 0.8 +
-                    formatFive(formatFive(maxSpeedOfAllCars * 1.0 / minSpeedOfAllCars) / formatFive(maxSpeedOfPriorityCars * 1.0 / minSpeedOfPriorityCars)) * 0.05 +
-                    formatFive(formatFive(maxPlanTimeOfAllCars * 1.0 / minPlanTimeOfAllCars) / formatFive(maxPlanTimeOfPriorityCars * 1.0 / minPlanTimeOfPriorityCars)) * 0.05 +
-                    formatFive(allCarStartDistribute.size() * 1.0 / priorityCarStartDistribute.size()) * 0.05 +
-                    formatFive(allCarEndDistribute.size() * 1.0 / priorityCarEndDistribute.size()) * 0.05;
+        Set priorityCarStartDistribute = new HashSet();
+        Set priorityCarEndDistribute = new HashSet();
 
-            System.out.println("优先车辆最早计划时间: "+ minPlanTimeOfPriorityCars);
+        int priorityCarCount = 0;
+
+        for (Car car : cars) {
+            if (car.isPriority() && car.getPlanTime() < minPlanTimeOfPriorityCars)
+                minPlanTimeOfPriorityCars = car.getPlanTime();
+            if (car.getPlanTime() < minPlanTimeOfAllCars)
+                minPlanTimeOfAllCars = car.getPlanTime();
 
-            System.out.println("优先车辆调度时间: " + (specialScheduleTime - minPlanTimeOfPriorityCars));
-            System.out.println("优先车辆总调度时间: " + totalSpecialScheduleTime);
-            System.out.println("原系统调度时间: " + systemScheduleTime);
-            System.out.println("原所有车辆实际总调度时间: " + totalScheduleTime);
-            System.out.println("系统调度时间: " + Math.round(systemScheduleTime + factorA * (specialScheduleTime - minPlanTimeOfPriorityCars)));
-            System.out.println("所有车辆实际总调度时间: " + (totalScheduleTime + formatFive(factorB) * totalSpecialScheduleTime));
+            if (car.isPriority() && car.getPlanTime() > maxPlanTimeOfPriorityCars)
+                maxPlanTimeOfPriorityCars = car.getPlanTime();
+            if (car.getPlanTime() > maxPlanTimeOfAllCars)
+                maxPlanTimeOfAllCars = car.getPlanTime();
 
+            allCarStartDistribute.add(car.getFrom());
+            allCarEndDistribute.add(car.getTo());
+            if (car.isPriority()) {
+                priorityCarStartDistribute.add(car.getFrom());
+                priorityCarEndDistribute.add(car.getTo());
+                priorityCarCount++;
+            }
         }
+
+        double factorA = (formatFive(cars.length / (numOfPriorityCars * 1.0))) * 0.05 +
+                formatFive(formatFive(maxSpeedOfAllCars * 1.0 / minSpeedOfAllCars) / formatFive(maxSpeedOfPriorityCars * 1.0 / minSpeedOfPriorityCars)) * 0.2375 +
+                formatFive(formatFive(maxPlanTimeOfAllCars * 1.0 / minPlanTimeOfAllCars) / formatFive(maxPlanTimeOfPriorityCars * 1.0 / minPlanTimeOfPriorityCars)) * 0.2375 +
+                formatFive(allCarStartDistribute.size() * 1.0 / priorityCarStartDistribute.size()) * 0.2375 +
+                formatFive(allCarEndDistribute.size() * 1.0 / priorityCarEndDistribute.size()) * 0.2375;
+
+        double factorB = formatFive(cars.length / (numOfPriorityCars * 1.0)) * 0.8 +
+                formatFive(formatFive(maxSpeedOfAllCars * 1.0 / minSpeedOfAllCars) / formatFive(maxSpeedOfPriorityCars * 1.0 / minSpeedOfPriorityCars)) * 0.05 +
+                formatFive(formatFive(maxPlanTimeOfAllCars * 1.0 / minPlanTimeOfAllCars) / formatFive(maxPlanTimeOfPriorityCars * 1.0 / minPlanTimeOfPriorityCars)) * 0.05 +
+                formatFive(allCarStartDistribute.size() * 1.0 / priorityCarStartDistribute.size()) * 0.05 +
+                formatFive(allCarEndDistribute.size() * 1.0 / priorityCarEndDistribute.size()) * 0.05;
+
+        return new double[]{factorA, factorB, minPlanTimeOfPriorityCars};
     }
 
     public double formatFive(double value) {
@@ -109,15 +162,34 @@ public class Scheduler {
     }
 
     public boolean stepUntilFinish() {
-        while (carStateCounter.get(CarState.WAIT) != 0 || carStateCounter.get(CarState.END) != 0 || carStateCounter.get(CarState.IN_GARAGE) != 0) {
-            if (!step())
+        while (context.getCarStateCount(CarState.WAIT) != 0 || context.getCarStateCount(CarState.END) != 0 || context.getCarStateCount(CarState.IN_GARAGE) != 0) {
+            if (!(eventDriven ? stepToNextEvent(Long.MAX_VALUE) : step()))
                 return false;
         }
         return true;
     }
 
+    // 下一个可能有事情发生的时刻：道路上有车时是下一时刻，否则是车库里最早的出发时间
+    public long nextEventTime() {
+        long next = context.getSystemScheduleTime() + UNIT_TIME;
+        if (context.getCarStateCount(CarState.WAIT) != 0 || context.getCarStateCount(CarState.END) != 0)
+            return next;
+        long earliest = Long.MAX_VALUE;
+        for (DirectedRoad directedRoad : directedRoads) {
+            earliest = Math.min(earliest, directedRoad.getGarage().nextStartTime());
+        }
+        return earliest == Long.MAX_VALUE ? next : Math.max(next, earliest);
+    }
+
+    // 跳过之前不会有事情发生的时刻，再调度一个时刻。horizon 是调用者下一次往车库放车的时刻，不会跳过它
+    public boolean stepToNextEvent(long horizon) {
+        long next = Math.min(nextEventTime(), horizon);
+        context.skipTo(next - UNIT_TIME);
+        return step();
+    }
+
     public boolean stepUntilFinishDebug() {
-        while (carStateCounter.get(CarState.WAIT) != 0 || carStateCounter.get(CarState.END) != 0 || carStateCounter.get(CarState.IN_GARAGE) != 0) {
+        while (context.getCarStateCount(CarState.WAIT) != 0 || context.getCarStateCount(CarState.END) != 0 || context.getCarStateCount(CarState.IN_GARAGE) != 0) {
             if (!step())
                 return false;
             printCarStates();
@@ -127,26 +199,36 @@ public class Scheduler {
 
     public boolean stepWithExport() {
         DecimalFormat df = new DecimalFormat("0000");
-        exportScheduleState("SDK_java/bin/config/" + df.format(systemScheduleTime) + ".log");
+        exportScheduleState("SDK_java/bin/config/" + df.format(context.getSystemScheduleTime()) + ".log");
         return step();
     }
 
     public boolean step() {
         //系统调度时间
-        systemScheduleTime += UNIT_TIME;
+        context.advanceTime();
 
         //       １升序循环整个地图中所有的道路
         //       ２让所有在道路上的车开始行驶到等待或终止状态
         driveAllCarOnRoad();
         // 优先上路车辆
         driveCarInGarage(true);
+        Arrays.fill(dirtyCrosses, true);
         while (!allCarInEndState()) {
             //全局车辆状态标识
-            carStateChanged = false;
+            context.setCarStateChanged(false);
 
             // 应该用do while
-            for (CrossRoads cross : crossMap.values()) {
-                cross.schedule(this);
+            if (phaseTwoPool != null) {
+                scheduleCrossesParallel();
+            } else if (crossWorklist) {
+                // 仍按 id 升序，跳过上次调度后相连道路没有变化的路口
+                for (int i = 0; i < crosses.length; i++) {
+                    scheduleCross(i);
+                }
+            } else {
+                for (CrossRoads cross : crosses) {
+                    cross.schedule(this);
+                }
             }
 
             if (detectDeadLock())
@@ -156,9 +238,112 @@ public class Scheduler {
         // 所有车辆上路
         driveCarInGarage(false);
 
+        if (context.getSystemScheduleTime() % CHECKPOINT_INTERVAL == 0)
+            saveCheckpoint();
+
+        if (consistencyCheck)
+            checkConsistency();
+
         return true;
     }
 
+    // 工作表模式下跳过相连道路没有变化的路口
+    void scheduleCross(int i) {
+        if (crossWorklist && !dirtyCrosses[i])
+            return;
+        dirtyCrosses[i] = false;
+        crosses[i].schedule(this);
+    }
+
+    private void scheduleCrossesParallel() {
+        context.setConcurrent(true);
+        try {
+            for (int[] level : crossLevels) {
+                if (level.length <= CrossLevelTask.GRAIN) {
+                    for (int i : level) {
+                        scheduleCross(i);
+                    }
+                } else {
+                    phaseTwoPool.invoke(new CrossLevelTask(this, level, 0, level.length));
+                }
+            }
+        } finally {
+            context.setConcurrent(false);
+        }
+    }
+
+    // 按道路相邻关系分层：level(i) = 1 + max(level(j))，j 为 id 比 i 小的相邻路口
+    private void buildCrossLevels() {
+        int[] level = new int[crosses.length];
+        int depth = 0;
+        for (int i = 0; i < crosses.length; i++) {
+            for (DirectedRoad directedRoad : directedRoads) {
+                int neighbor;
+                if (directedRoad.getEntryCrossIndex() == i)
+                    neighbor = directedRoad.getExitCrossIndex();
+                else if (directedRoad.getExitCrossIndex() == i)
+                    neighbor = directedRoad.getEntryCrossIndex();
+                else
+                    continue;
+                if (neighbor >= 0 && neighbor < i)
+                    level[i] = Math.max(level[i], level[neighbor] + 1);
+            }
+            depth = Math.max(depth, level[i] + 1);
+        }
+        int[] sizes = new int[depth];
+        for (int l : level) {
+            sizes[l]++;
+        }
+        crossLevels = new int[depth][];
+        for (int l = 0; l < depth; l++) {
+            crossLevels[l] = new int[sizes[l]];
+            sizes[l] = 0;
+        }
+        // 层内仍按 id 升序
+        for (int i = 0; i < crosses.length; i++) {
+            crossLevels[level[i]][sizes[level[i]]++] = i;
+        }
+    }
+
+    private void saveCheckpoint() {
+        int slot;
+        if (checkpointCount == CHECKPOINT_CAPACITY) {
+            slot = checkpointHead;
+            checkpointHead = (checkpointHead + 1) % CHECKPOINT_CAPACITY;
+        } else {
+            slot = (checkpointHead + checkpointCount) % CHECKPOINT_CAPACITY;
+            checkpointCount++;
+        }
+        if (checkpoints[slot] == null)
+            checkpoints[slot] = new Checkpoint(cars.length, countLanes());
+        checkpoints[slot].save(this);
+    }
+
+    // 取时刻早于 time 的最近一个快照，比它新的快照属于被放弃的调度过程，一并丢弃
+    private Checkpoint takeCheckpointBefore(long time) {
+        while (checkpointCount > 0 && newestCheckpoint().getTime() >= time) {
+            checkpointCount--;
+        }
+        return checkpointCount > 0 ? newestCheckpoint() : null;
+    }
+
+    private Checkpoint newestCheckpoint() {
+        return checkpoints[(checkpointHead + checkpointCount - 1) % CHECKPOINT_CAPACITY];
+    }
+
+    private void clearCheckpoints() {
+        checkpointHead = 0;
+        checkpointCount = 0;
+    }
+
+    private int countLanes() {
+        int laneCount = 0;
+        for (DirectedRoad directedRoad : directedRoads) {
+            laneCount += directedRoad.getLanes().length;
+        }
+        return laneCount;
+    }
+
 
 //    public boolean step(TrafficMap trafficMap) {
 //        //系统调度时间
@@ -192,81 +377,287 @@ public class Scheduler {
 
 
     public boolean detectDeadLock() {
-        if (!carStateChanged)
-            deadLockCounter++;
-        else
-            deadLockCounter = 0;
-        if (deadLockCounter == DEADLOCK_DETECT_THRESHOLD) {
-            System.err.println("Dead lock detected!");
-            System.out.println();
-            printDeadLockRoads();
-            return true;
-        }
+        if (context.isCarStateChanged())
+            return false;
 
-        return false;
+        System.err.println("Dead lock detected!");
+        System.out.println();
+        advanceLanes();
+        lastDeadlockReport = new DeadlockDetector(this).detect();
+        lastDeadlockReport.print();
+        return true;
+    }
+
+    // 最近一次死锁的报告，没有发生过死锁时为 null
+    public DeadlockReport getLastDeadlockReport() {
+        return lastDeadlockReport;
     }
 
     public void driveAllCarOnRoad() {
-        for (Road road : roadMap.values()) {
+        int onRoad = context.getCarStateCount(CarState.WAIT) + context.getCarStateCount(CarState.END);
+        if (phaseOnePool == null || onRoad < PARALLEL_PHASE_ONE_THRESHOLD) {
+            driveAllCarOnRoadSequential();
+            return;
+        }
+        if (phaseOneCheck) {
+            checkPhaseOne();
+            return;
+        }
+        driveAllCarOnRoadParallel();
+    }
+
+    private void driveAllCarOnRoadSequential() {
+        for (Road road : roads) {
 
             road.moveCarsOnRoad();
-            if (road.isBidirectional()) {
-                road.createSequenceList(road.getStart());
-                road.createSequenceList(road.getEnd());
-            } else
-                road.createSequenceList(road.getEnd());
+            for (DirectedRoad directedRoad : road.getDirectedRoads()) {
+                directedRoad.createSequenceList();
+            }
+        }
+    }
+
+    private void driveAllCarOnRoadParallel() {
+        // 并行时不逐辆更新状态统计，结束后按 WAIT 的数量一次写入。状态变化标识会在路口调度前重置，这里不需要
+        context.setDeferCounting(true);
+        int[] waiting;
+        try {
+            waiting = phaseOnePool.invoke(new PhaseOneTask(directedRoads, 0, directedRoads.length));
+        } finally {
+            context.setDeferCounting(false);
+        }
+        context.setOnRoadCounts(waiting);
+    }
+
+    // 先并行跑一遍第一阶段并记下结果，恢复车道和车辆后再顺序跑一遍，两者不一致时报错
+    private void checkPhaseOne() {
+        advanceLanes();
+        FleetState before = fleet.copy();
+        CarStateCounter countsBefore = context.getCarStateCounter().copy();
+
+        driveAllCarOnRoadParallel();
+        advanceLanes();
+        FleetState parallel = fleet.copy();
+        CarStateCounter countsParallel = context.getCarStateCounter().copy();
+
+        // 第一阶段中车不会换车道，也不会超过前车，按原来的顺序放回原来的位置即可
+        fleet.restore(before);
+        for (DirectedRoad directedRoad : directedRoads) {
+            for (Lane lane : directedRoad.getLaneList()) {
+                Car[] laneCars = new Car[lane.getCarCount()];
+                for (int k = 0; k < laneCars.length; k++) {
+                    laneCars[k] = lane.getCarAt(k);
+                }
+                lane.clear();
+                for (Car car : laneCars) {
+                    lane.putCar(car, car.getPosition());
+                }
+            }
+        }
+        context.getCarStateCounter().restore(countsBefore);
+
+        driveAllCarOnRoadSequential();
+        advanceLanes();
+        if (!fleet.sameState(parallel) || !context.getCarStateCounter().sameCounts(countsParallel)) {
+            System.err.println("Scheduler#checkPhaseOne#mismatch at time " + context.getSystemScheduleTime());
+        }
+    }
+
+    // 每条车道内部一致，且道路上的车辆和车道里的车一一对应
+    public boolean checkConsistency() {
+        boolean ok = true;
+        int carsInLanes = 0;
+        for (DirectedRoad directedRoad : directedRoads) {
+            for (Lane lane : directedRoad.getLaneList()) {
+                ok &= lane.checkConsistency();
+                carsInLanes += lane.getCarCount();
+            }
+        }
+        int carsWithLane = 0;
+        for (Car car : cars) {
+            Lane lane = car.getLane();
+            if (lane == null)
+                continue;
+            carsWithLane++;
+            if (lane.getCar(car.getPosition()) != car) {
+                System.err.println("Scheduler#checkConsistency#error: car " + car.getId() + " not found in lane " + lane.getId());
+                ok = false;
+            }
+        }
+        if (carsWithLane != carsInLanes) {
+            System.err.println("Scheduler#checkConsistency#error: " + carsWithLane + " cars on road, " + carsInLanes + " cars in lanes at time " + context.getSystemScheduleTime());
+            ok = false;
         }
+        return ok;
+    }
+
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+    }
+
+    public void setConsistencyCheck(boolean consistencyCheck) {
+        this.consistencyCheck = consistencyCheck;
+    }
+
+    // pool 为 null 时第一阶段顺序处理
+    public void setPhaseOnePool(ForkJoinPool phaseOnePool) {
+        this.phaseOnePool = phaseOnePool;
+    }
+
+    public void setPhaseOneCheck(boolean phaseOneCheck) {
+        this.phaseOneCheck = phaseOneCheck;
+    }
+
+    // pool 为 null 时第二阶段按 id 升序顺序调度
+    public void setPhaseTwoPool(ForkJoinPool phaseTwoPool) {
+        this.phaseTwoPool = phaseTwoPool;
+    }
+
+    public int[][] getCrossLevels() {
+        return crossLevels;
     }
 
     public void driveCarInGarage(boolean highPriority) {
-        for (Road road : roadMap.values()) {
-            road.runCarsInGarage(highPriority);
+        for (Road road : roads) {
+            road.runCarsInGarage(highPriority, context.getSystemScheduleTime());
         }
     }
 
     private boolean allCarInEndState() {
-        if (Scheduler.carStateCounter.get(CarState.WAIT) != 0)
+        if (context.getCarStateCount(CarState.WAIT) != 0)
             return false;
         return true;
     }
 
     public void addRoad(Road road) {
-        roadMap.put(road.getId(), road);
+        roadList.add(road);
     }
 
     public Road getRoad(int roadId) {
-        return roadMap.get(roadId);
+        int idx = roadIndex.indexOf(roadId);
+        return idx == -1 ? null : roads[idx];
     }
 
     public void addCar(Car car) {
-        carMap.put(car.getId(), car);
+        carList.add(car);
     }
 
     public Car getCar(int carId) {
-        return carMap.get(carId);
+        int idx = carIndex.indexOf(carId);
+        return idx == -1 ? null : cars[idx];
     }
 
     public void addCross(CrossRoads cross) {
-        cross.addRoads(roadMap); //添加道路到路口
-        crossMap.put(cross.getId(), cross);
+        crossList.add(cross);
+    }
+
+    // 载入完所有道路、路口和车辆之后调用：按 id 升序分配稠密下标，之后调度只用数组下标访问
+    public void initIndex() {
+        roadList.sort(Comparator.comparingInt(Road::getId));
+        crossList.sort(Comparator.comparingInt(CrossRoads::getId));
+        carList.sort(Car.idComparator);
+
+        roads = roadList.toArray(new Road[0]);
+        crosses = crossList.toArray(new CrossRoads[0]);
+        cars = carList.toArray(new Car[0]);
+
+        int[] ids = new int[roads.length];
+        for (int i = 0; i < roads.length; i++) {
+            roads[i].setIndex(i);
+            ids[i] = roads[i].getId();
+        }
+        roadIndex = new IdIndex(ids);
+
+        ArrayList<DirectedRoad> directedRoadList = new ArrayList<>();
+        for (Road road : roads) {
+            for (DirectedRoad directedRoad : road.getDirectedRoads()) {
+                directedRoad.setIndex(directedRoadList.size());
+                directedRoadList.add(directedRoad);
+            }
+        }
+        directedRoads = directedRoadList.toArray(new DirectedRoad[0]);
+
+        ids = new int[crosses.length];
+        for (int i = 0; i < crosses.length; i++) {
+            crosses[i].setIndex(i);
+            ids[i] = crosses[i].getId();
+        }
+        crossIndex = new IdIndex(ids);
+        dirtyCrosses = new boolean[crosses.length];
+
+        for (DirectedRoad directedRoad : directedRoads) {
+            directedRoad.setCrossIndex(crossIndex.indexOf(directedRoad.getEntryCross()), crossIndex.indexOf(directedRoad.getExitCross()));
+        }
+        buildCrossLevels();
+
+        fleet = new FleetState(cars.length);
+        ids = new int[cars.length];
+        long numOfPriorityCars = 0L;
+        for (int i = 0; i < cars.length; i++) {
+            cars[i].attach(fleet, context);
+            if (cars[i].isPriority())
+                numOfPriorityCars++;
+            cars[i].setCrossIndex(crossIndex.indexOf(cars[i].getFrom()), crossIndex.indexOf(cars[i].getTo()));
+            ids[i] = cars[i].getId();
+        }
+        carIndex = new IdIndex(ids);
+        context.setNumOfPriorityCars(numOfPriorityCars);
+        recountCarStates();
+
+        int laneCount = countLanes();
+        for (int i = 0; i < CHECKPOINT_CAPACITY; i++) {
+            checkpoints[i] = new Checkpoint(cars.length, laneCount);
+        }
+        clearCheckpoints();
+
+        for (CrossRoads cross : crosses) {
+            cross.addRoads(roads, roadIndex); //添加道路到路口
+        }
     }
 
     public void addToGarage(Car car) {
-        roadMap.get(car.getPath().get(0)).addToGarage(car);
+        Itinerary itinerary = compileItinerary(car);
+        if (itinerary == null)
+            return;
+        car.setItinerary(itinerary);
+        directedRoads[itinerary.getDirectedRoad(0)].addToGarage(car);
+    }
+
+    // 把原始道路 id 的路径编译成行程。路径为空、道路不存在或不能从起点依次连到终点时输出错误并返回 null
+    public Itinerary compileItinerary(Car car) {
+        ArrayList<Integer> path = car.getPath();
+        if (path.size() == 0) {
+            System.err.println("Scheduler#compileItinerary#error: car " + car.getId() + " has no path");
+            return null;
+        }
+        Itinerary itinerary = new Itinerary(path.size());
+        int cross = car.getFromIndex();
+        for (int i = 0; i < path.size(); i++) {
+            int r = roadIndex.indexOf(path.get(i));
+            DirectedRoad directedRoad = r == -1 ? null : roads[r].getDirectedRoadFrom(crosses[cross].getId());
+            if (directedRoad == null) {
+                System.err.println("Scheduler#compileItinerary#error: car " + car.getId() + " can not enter road " + path.get(i) + " from cross " + crosses[cross].getId());
+                return null;
+            }
+            cross = directedRoad.getExitCrossIndex();
+            itinerary.setHop(i, r, directedRoad.getIndex(), cross, Math.min(car.getTopSpeed(), roads[r].getTopSpeed()));
+        }
+        if (cross != car.getToIndex()) {
+            System.err.println("Scheduler#compileItinerary#error: path of car " + car.getId() + " ends at cross " + crosses[cross].getId() + " instead of " + car.getTo());
+            return null;
+        }
+        for (int i = 0; i < path.size(); i++) {
+            crosses[itinerary.getExitCross(i)].compileExit(itinerary, i);
+        }
+        return itinerary;
     }
 
 
     public void resetCarStatusCounter() {
-        carStateCounter.clear();
-        carStateCounter.put(CarState.WAIT, 0);
-        carStateCounter.put(CarState.IN_GARAGE, 0);
-        carStateCounter.put(CarState.OFF_ROAD, 0);
-        carStateCounter.put(CarState.END, 0);
+        context.resetCarStateCounter();
     }
 
     public void resetDeadlockCounter() {
-        deadLockCounter = 0;
-        carStateChanged = false;
+        context.setCarStateChanged(false);
     }
 
     public void reset() {
@@ -275,31 +666,63 @@ public class Scheduler {
         resetDeadlockCounter();
 
 
-        systemScheduleTime = 0L;
-        totalScheduleTime = 0L;
+        context.restoreTime(0L, 0L, context.getSpecialScheduleTime(), context.getTotalSpecialScheduleTime());
 
-        carMap.forEach((carId, car) -> car.resetCarState());
-        roadMap.forEach((roadId, road) -> road.resetRoadState());
+        for (Car car : cars) {
+            car.resetCarState();
+        }
+        for (Road road : roads) {
+            road.resetRoadState();
+        }
+        clearCheckpoints();
+        recountCarStates();
     }
 
+    // 回到 time 之前最近的快照 (没有快照时回到 0 时刻)，出发时间晚于 time 的非预设车辆取消出发，
+    // 其余未出发的车重新放入车库。之后由调用者重放到 time
     public void rollback(long time) {
         // 重置调度器所有参数的状态
-        resetCarStatusCounter();
         resetDeadlockCounter();
 
-        systemScheduleTime = 0L;
-        totalScheduleTime = 0L;
+        for (Car car : cars) {
+            car.rollbackCarState(time);
+        }
+
+        Checkpoint checkpoint = takeCheckpointBefore(time);
+        if (checkpoint != null) {
+            checkpoint.restore(this);
+        } else {
+            context.resetTime();
+            for (Road road : roads) {
+                road.resetRoadState();
+            }
+        }
 
-        carMap.forEach((carId, car) -> car.rollbackCarState(time));
-        roadMap.forEach((roadId, road) -> road.resetRoadState());
+        for (Car car : cars) {
+            if (car.getState() != null && car.getState() != CarState.IN_GARAGE)
+                continue;
+            if (car.getStartTime() != -1L)
+                addToGarage(car);
+            else
+                fleet.reset(car.getIndex());
+        }
+        recountCarStates();
+    }
+
+    private void recountCarStates() {
+        context.recountCarStates(cars);
     }
 
     public Long getScheduleTime() {
-        return totalScheduleTime;
+        return context.getTotalScheduleTime();
     }
 
     public Long getSystemScheduleTime() {
-        return systemScheduleTime;
+        return context.getSystemScheduleTime();
+    }
+
+    public SimulationContext getContext() {
+        return context;
     }
 
     public int getUNIT_TIME() {
@@ -307,24 +730,74 @@ public class Scheduler {
     }
 
 
-    public TreeMap<Integer, CrossRoads> getCrossMap() {
-        return crossMap;
+    public CrossRoads[] getCrosses() {
+        return crosses;
     }
 
-    public TreeMap<Integer, Road> getRoadMap() {
-        return roadMap;
+    public Road[] getRoads() {
+        return roads;
     }
 
-    public TreeMap<Integer, Car> getCarMap() {
-        return carMap;
+    public DirectedRoad[] getDirectedRoads() {
+        return directedRoads;
+    }
+
+    // 该方向上有车移动或状态变化，两端路口都需要重新调度
+    public void markChanged(DirectedRoad directedRoad) {
+        dirtyCrosses[directedRoad.getEntryCrossIndex()] = true;
+        dirtyCrosses[directedRoad.getExitCrossIndex()] = true;
+    }
+
+    public boolean isCrossWorklist() {
+        return crossWorklist;
+    }
+
+    public void setCrossWorklist(boolean crossWorklist) {
+        this.crossWorklist = crossWorklist;
+    }
+
+    public Car[] getCars() {
+        return cars;
+    }
+
+    public CrossRoads getCrossByIndex(int index) {
+        return crosses[index];
+    }
+
+    public Road getRoadByIndex(int index) {
+        return roads[index];
+    }
+
+    public IdIndex getCrossIndex() {
+        return crossIndex;
+    }
+
+    public IdIndex getRoadIndex() {
+        return roadIndex;
+    }
+
+    public IdIndex getCarIndex() {
+        return carIndex;
+    }
+
+    // 车道的惰性推进只在车道内部记账，直接读取 FleetState 或逐辆读取车辆位置之前先推进到位
+    public void advanceLanes() {
+        for (DirectedRoad directedRoad : directedRoads) {
+            directedRoad.advanceLanes();
+        }
+    }
+
+    public FleetState getFleet() {
+        return fleet;
     }
 
 
     public void printCarsOnRoad() {
-        carMap.forEach((carId, car) -> {
+        advanceLanes();
+        for (Car car : cars) {
             if (car.getState() != CarState.IN_GARAGE)
-                System.out.printf("Car %d state %-15s position %-3d lane %d\n", carId, car.getState(), car.getPosition(), car.getLaneId());
-        });
+                System.out.printf("Car %d state %-15s position %-3d lane %d\n", car.getId(), car.getState(), car.getPosition(), car.getLaneId());
+        }
         System.out.println();
     }
 
@@ -346,7 +819,7 @@ public class Scheduler {
 
     public void exportScheduleState(String dataFilePath) {
         try (BufferedWriter br = new BufferedWriter(new FileWriter(dataFilePath))) {
-            for (Road road : roadMap.values()) {
+            for (Road road : roads) {
                 br.write("# Road ID = " + road.getId() + "\n");
                 br.write(exportRoadLaneList(road, "forward"));
                 if (road.isBidirectional()) {
@@ -360,7 +833,7 @@ public class Scheduler {
 
     public String exportRoadLaneList(Road road, String direction) {
         StringBuilder builder = new StringBuilder();
-        ArrayList<Lane> laneList;
+        List<Lane> laneList;
         if (direction.equals("forward"))
             laneList = road.getLaneListBy(road.getEnd());
         else
@@ -371,7 +844,7 @@ public class Scheduler {
             Lane lane = laneList.get(i);
 
             for (int j = road.getLen(); j >= 1; j--) {
-                Car car = lane.getCarMap().get(j);
+                Car car = lane.getCar(j);
                 if (car != null)
                     builder.append(String.format("(%s, %s), ", car.getId(), lane.getLength() - car.getPosition()));
             }
@@ -416,6 +889,7 @@ public class Scheduler {
                     scheduler.addCar(car);
                 }
         );
+        scheduler.initIndex();
 
 //        presetAnswers.forEach(
 //                answerLine -> {
@@ -450,7 +924,7 @@ public class Scheduler {
         String[] vars = answer.split(",");
         int carId = Integer.parseInt(vars[0]);
         // 更新车辆行驶信息
-        Car car = carMap.get(carId);
+        Car car = getCar(carId);
         car.setStartTime(Integer.parseInt(vars[1]));
         if (car.getPath().size() == 0) {
             for (int i = 2; i < vars.length; i++) {
@@ -463,36 +937,21 @@ public class Scheduler {
         addToGarage(car);
     }
 
-    public void printDeadLockRoads() {
-        System.out.println("Deadlock road status: ");
-        for (Road road : roadMap.values()) {
-            if (road.getCarSequenceList(road.getEnd()).size() != 0) {
-                System.out.println("Road "+road.getId()+" load "+road.calculateLoad());
-            }
-        }
-    }
-
+    // 还有没到达终点的预置车辆 (包括还没有出发的)
     public boolean havePresetCarOnRoad() {
-        for (Car car : carMap.values()) {
-            if (car.isPreset() && car.getState() != CarState.OFF_ROAD) {
-                return true;
-            }
-        }
-        return false;
+        CarStateCounter counter = context.getCarStateCounter();
+        return counter.get(CarStateCounter.PRESET, CarState.OFF_ROAD) < counter.total(CarStateCounter.PRESET);
     }
 
+    // 还有没到达终点的优先车辆 (包括还没有出发的)
     public boolean havePriorityCarOnRoad() {
-        for (Car car : carMap.values()) {
-            if (car.isPriority() && car.getState() != CarState.OFF_ROAD) {
-                return true;
-            }
-        }
-        return false;
+        CarStateCounter counter = context.getCarStateCounter();
+        return counter.get(CarStateCounter.PRIORITY, CarState.OFF_ROAD) < counter.total(CarStateCounter.PRIORITY);
     }
 
     public long resetDeadlockedCars() {
         ArrayList<Long> timeList = new ArrayList<>();
-        for (Road road : roadMap.values()) {
+        for (Road road : roads) {
             ArrayList<Car> list = road.getCarSequenceList(road.getEnd());
             if (list.size() != 0) {
                 for (Car car : list) {
@@ -517,7 +976,7 @@ public class Scheduler {
 
         if(timeList.size()==0){
             // 极少发生的情况，由预设车或优先车导致的死锁
-            for (Road road : roadMap.values()) {
+            for (Road road : roads) {
                 ArrayList<Car> list = road.getCarSequenceList(road.getEnd());
                 if (list.size() != 0) {
                     for (Car car : list) {
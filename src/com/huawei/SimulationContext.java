@@ -0,0 +1,206 @@
+package com.huawei;
+
+// 一次调度过程的全局状态：系统时间、调度时间统计、车辆状态计数和判题用的车速统计。
+// 每个 Scheduler 持有自己的一份，车辆在 attach 时拿到所属调度器的 context，同一个 JVM 中可以同时运行多个调度器
+public class SimulationContext {
+
+    public static final int UNIT_TIME = 1;
+
+    private long systemScheduleTime = 0L;
+    private long totalScheduleTime = 0L;
+    private long specialScheduleTime = 0L;
+    private long totalSpecialScheduleTime = 0L;
+
+    // 死锁检测：一轮路口调度中是否有车辆状态变化
+    private boolean carStateChanged = false;
+
+    //车辆状态统计
+    private final CarStateCounter carStateCounter = new CarStateCounter();
+    // 并行的第一阶段中不更新统计，结束后由调度器用 setOnRoadCounts 一次写入
+    private boolean deferCounting = false;
+    // 并行的第二阶段中多个路口同时更新统计，状态变化、到达和车速统计加锁
+    private boolean concurrent = false;
+
+    // factor information
+    private long numOfPriorityCars = 0L;
+
+    private int maxSpeedOfAllCars = 0;
+    private int minSpeedOfAllCars = 999;
+    private int maxSpeedOfPriorityCars = 0;
+    private int minSpeedOfPriorityCars = 999;
+
+    public SimulationContext() {
+        resetCarStateCounter();
+    }
+
+    public long advanceTime() {
+        systemScheduleTime += UNIT_TIME;
+        return systemScheduleTime;
+    }
+
+    // 车辆状态从 original 变为 now
+    public void onStateChange(Car car, CarState original, CarState now) {
+        if (deferCounting)
+            return;
+        if (concurrent) {
+            synchronized (this) {
+                applyStateChange(car, original, now);
+            }
+            return;
+        }
+        applyStateChange(car, original, now);
+    }
+
+    private void applyStateChange(Car car, CarState original, CarState now) {
+        if (original != null && !original.equals(now))
+            carStateChanged = true;
+
+        if (original == now)
+            return;
+        carStateCounter.change(car, original, now);
+    }
+
+    public int getCarStateCount(CarState state) {
+        return carStateCounter.get(CarStateCounter.ALL, state);
+    }
+
+    public CarStateCounter getCarStateCounter() {
+        return carStateCounter;
+    }
+
+    public void setDeferCounting(boolean deferCounting) {
+        this.deferCounting = deferCounting;
+    }
+
+    // waiting 是每一类车辆中 WAIT 状态的数量，按 CarStateCounter 的类别下标
+    public void setOnRoadCounts(int[] waiting) {
+        carStateCounter.setOnRoadCounts(waiting);
+    }
+
+    public void resetCarStateCounter() {
+        carStateCounter.clear();
+    }
+
+    // 按车辆当前状态重新统计
+    public void recountCarStates(Car[] cars) {
+        carStateCounter.recount(cars);
+    }
+
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    public void recordSpeed(int currentSpeed, boolean priority) {
+        if (concurrent) {
+            synchronized (this) {
+                applySpeed(currentSpeed, priority);
+            }
+            return;
+        }
+        applySpeed(currentSpeed, priority);
+    }
+
+    private void applySpeed(int currentSpeed, boolean priority) {
+        if (maxSpeedOfAllCars < currentSpeed)
+            maxSpeedOfAllCars = currentSpeed;
+        if (minSpeedOfAllCars > currentSpeed)
+            minSpeedOfAllCars = currentSpeed;
+        if (priority) {
+            if (maxSpeedOfPriorityCars < currentSpeed)
+                maxSpeedOfPriorityCars = currentSpeed;
+            if (minSpeedOfPriorityCars > currentSpeed)
+                minSpeedOfPriorityCars = currentSpeed;
+        }
+    }
+
+    // 车辆到达终点，记入调度时间
+    public void recordArrival(Car car) {
+        if (concurrent) {
+            synchronized (this) {
+                applyArrival(car);
+            }
+            return;
+        }
+        applyArrival(car);
+    }
+
+    private void applyArrival(Car car) {
+        car.setEndTime(systemScheduleTime);
+        totalScheduleTime += car.getEndTime() - car.getPlanTime();
+
+        // Special schedule time
+        if (car.isPriority()) {
+            specialScheduleTime = systemScheduleTime;
+            totalSpecialScheduleTime += car.getEndTime() - car.getPlanTime();
+        }
+    }
+
+    // 调度时间统计回到 0 时刻
+    // 事件驱动时跳过不会发生任何事情的时刻，只移动系统时间，调度时间统计不变
+    public void skipTo(long time) {
+        if (time > systemScheduleTime)
+            systemScheduleTime = time;
+    }
+
+    public void resetTime() {
+        systemScheduleTime = 0L;
+        totalScheduleTime = 0L;
+        specialScheduleTime = 0L;
+        totalSpecialScheduleTime = 0L;
+    }
+
+    public void restoreTime(long systemScheduleTime, long totalScheduleTime, long specialScheduleTime, long totalSpecialScheduleTime) {
+        this.systemScheduleTime = systemScheduleTime;
+        this.totalScheduleTime = totalScheduleTime;
+        this.specialScheduleTime = specialScheduleTime;
+        this.totalSpecialScheduleTime = totalSpecialScheduleTime;
+    }
+
+    public long getSystemScheduleTime() {
+        return systemScheduleTime;
+    }
+
+    public long getTotalScheduleTime() {
+        return totalScheduleTime;
+    }
+
+    public long getSpecialScheduleTime() {
+        return specialScheduleTime;
+    }
+
+    public long getTotalSpecialScheduleTime() {
+        return totalSpecialScheduleTime;
+    }
+
+    public boolean isCarStateChanged() {
+        return carStateChanged;
+    }
+
+    public void setCarStateChanged(boolean carStateChanged) {
+        this.carStateChanged = carStateChanged;
+    }
+
+    public long getNumOfPriorityCars() {
+        return numOfPriorityCars;
+    }
+
+    public void setNumOfPriorityCars(long numOfPriorityCars) {
+        this.numOfPriorityCars = numOfPriorityCars;
+    }
+
+    public int getMaxSpeedOfAllCars() {
+        return maxSpeedOfAllCars;
+    }
+
+    public int getMinSpeedOfAllCars() {
+        return minSpeedOfAllCars;
+    }
+
+    public int getMaxSpeedOfPriorityCars() {
+        return maxSpeedOfPriorityCars;
+    }
+
+    public int getMinSpeedOfPriorityCars() {
+        return minSpeedOfPriorityCars;
+    }
+}
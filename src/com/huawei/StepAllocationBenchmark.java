@@ -0,0 +1,93 @@
+package com.huawei;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+// 测量 Scheduler.step 每个时刻分配的字节数。把预置答案和 answer.txt 一起作为路径载入，不做路径规划，
+// 先用同样的测量代码完整调度直到某一遍不再分配，让 JIT 编译热点代码，再在一份新的地图上逐个时刻测量，保存快照的时刻也计入。
+// 任何一个时刻的分配超过上限时以非 0 状态退出，用来发现重新引入分配的改动。
+//
+// 用法: StepAllocationBenchmark [配置目录，默认 SDK_java/bin/config] [每个时刻允许的字节数，默认 0]
+// 不在 makelist.txt 中，不随判题程序一起编译
+public class StepAllocationBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+
+    public static void main(String[] args) {
+        String dir = args.length > 0 ? args[0] : "SDK_java/bin/config";
+        long limit = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            System.err.println("StepAllocationBenchmark#error: thread allocated memory is not supported");
+            System.exit(2);
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        ArrayList<String> cars = Main.readFile(dir + "/car.txt");
+        ArrayList<String> roads = Main.readFile(dir + "/road.txt");
+        ArrayList<String> crossRoads = Main.readFile(dir + "/cross.txt");
+        ArrayList<String> answers = Main.readFile(dir + "/presetAnswer.txt");
+        answers.addAll(Main.readFile(dir + "/answer.txt"));
+
+        // 预热和测量走同一段代码。Checkpoint.save 这类只在快照时刻运行的长循环编译得晚，JIT 开始编译时会在调度线程上
+        // 分配少量内存，发生在哪一遍不确定，所以预热到一整遍每个时刻都不分配为止，最多 WARMUP_RUNS 遍
+        long[] result = new long[4];
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            measure(threadBean, load(cars, roads, crossRoads, answers), result);
+            if (result[1] == 0)
+                break;
+        }
+        long startTime = System.currentTimeMillis();
+        measure(threadBean, load(cars, roads, crossRoads, answers), result);
+        long endTime = System.currentTimeMillis();
+        long ticks = result[0];
+        long maxBytes = result[1];
+        long maxTick = result[2];
+        long totalBytes = result[3];
+
+        System.out.println("ticks: " + ticks + " time: " + (endTime - startTime) + "ms");
+        System.out.println("bytes/tick avg: " + (ticks == 0 ? 0 : totalBytes / ticks) + " max: " + maxBytes + " at " + maxTick);
+        if (maxBytes > limit) {
+            System.err.println("StepAllocationBenchmark#fail: " + maxBytes + " bytes allocated at " + maxTick + ", limit " + limit);
+            System.exit(1);
+        }
+    }
+
+    // 逐个时刻调度到所有车辆到达，result 依次写入时刻数、单个时刻最多分配的字节数、对应的时刻和总字节数
+    private static void measure(com.sun.management.ThreadMXBean threadBean, Scheduler scheduler, long[] result) {
+        SimulationContext context = scheduler.getContext();
+        long thread = Thread.currentThread().getId();
+        long ticks = 0L;
+        long totalBytes = 0L;
+        long maxBytes = 0L;
+        long maxTick = -1L;
+        while (!scheduler.allCarArrived()) {
+            long before = threadBean.getThreadAllocatedBytes(thread);
+            if (!scheduler.step()) {
+                System.err.println("StepAllocationBenchmark#error: dead lock at " + context.getSystemScheduleTime());
+                System.exit(2);
+            }
+            long bytes = threadBean.getThreadAllocatedBytes(thread) - before;
+            ticks++;
+            totalBytes += bytes;
+            if (bytes > maxBytes) {
+                maxBytes = bytes;
+                maxTick = context.getSystemScheduleTime();
+            }
+        }
+        result[0] = ticks;
+        result[1] = maxBytes;
+        result[2] = maxTick;
+        result[3] = totalBytes;
+    }
+
+    private static Scheduler load(ArrayList<String> cars, ArrayList<String> roads, ArrayList<String> crossRoads, ArrayList<String> answers) {
+        Scheduler scheduler = Main.loadTrafficMap(cars, roads, crossRoads, answers).getScheduler();
+        for (Car car : scheduler.getCars()) {
+            if (car.getPath().size() > 0)
+                scheduler.addToGarage(car);
+        }
+        return scheduler;
+    }
+}
@@ -32,6 +32,32 @@ public class TrafficMap {
     private HashMap<Integer, Road> roads = new HashMap<>();
     private HashMap<Integer, Car> cars = new HashMap<>();
 
+    // graph 的 CSR 副本，路径规划都在它上面做，路径的边下标写入 pathBuffer
+    private RoutingGraph routing;
+    private int[] pathBuffer;
+    // 路径规划是否用 Dial 桶队列，见 RoutingGraph.setDial
+    private boolean dialRouting = false;
+    // 路径规划是否用按终点缓存的最短路径树，见 RoutingCache
+    private boolean treeRouting = false;
+    // 同一起点在权重不变期间共用一次搜索，结果与逐个查询相同，见 RoutingBatch
+    private boolean batchRouting = true;
+
+    // graph 的边增删之后重新生成 CSR 副本
+    private void buildRouting() {
+        routing = RoutingGraph.build(graph, scheduler.getCrosses());
+        routing.setDial(dialRouting);
+        routing.setTreeCache(treeRouting);
+        routing.setBatch(batchRouting);
+        pathBuffer = new int[routing.getVertexCount()];
+    }
+
+    // 两份图的权重一起更新
+    private void setEdgeWeight(RoadEdge edge, double weight) {
+        graph.setEdgeWeight(edge, weight);
+        if (routing != null)
+            routing.setWeight(edge, weight);
+    }
+
     public void initGraphEdge() {
 
         crossMap.forEach((cross, crossObj) -> graph.addVertex(crossObj));
@@ -41,16 +67,17 @@ public class TrafficMap {
             graph.removeAllEdges(from, to);
 
             RoadEdge roadEdge = new RoadEdge(road, from, to);
-            graph.setEdgeWeight(roadEdge, roadEdge.road.getLen());
+            setEdgeWeight(roadEdge, roadEdge.road.getLen());
             graph.addEdge(from, to, roadEdge);
 
             if (road.isBidirectional()) {
                 graph.removeAllEdges(to, from);
                 RoadEdge roadEdge1 = new RoadEdge(road, to, from);
-                graph.setEdgeWeight(roadEdge1, roadEdge1.road.getLen());
+                setEdgeWeight(roadEdge1, roadEdge1.road.getLen());
                 graph.addEdge(to, from, roadEdge1);
             }
         });
+        buildRouting();
     }
 
 
@@ -66,17 +93,18 @@ public class TrafficMap {
             graph.removeAllEdges(from, to);
 
             RoadEdge roadEdge = new RoadEdge(road, from, to);
-            graph.setEdgeWeight(roadEdge, weights[i]);
+            setEdgeWeight(roadEdge, weights[i]);
             graph.addEdge(from, to, roadEdge);
 
             if (road.isBidirectional()) {
                 graph.removeAllEdges(to, from);
                 RoadEdge roadEdge1 = new RoadEdge(road, to, from);
-                graph.setEdgeWeight(roadEdge1, weights[i]);
+                setEdgeWeight(roadEdge1, weights[i]);
                 graph.addEdge(to, from, roadEdge1);
             }
             i++;
         }
+        buildRouting();
     }
 
 
@@ -108,16 +136,17 @@ public class TrafficMap {
             graph.removeAllEdges(from, to);
 
             RoadEdge roadEdge = new RoadEdge(road, from, to);
-            graph.setEdgeWeight(roadEdge, roadEdge.road.getLen() / roadEdge.road.getTopSpeed());
+            setEdgeWeight(roadEdge, roadEdge.road.getLen() / roadEdge.road.getTopSpeed());
             graph.addEdge(from, to, roadEdge);
 
             if (road.isBidirectional()) {
                 graph.removeAllEdges(to, from);
                 RoadEdge roadEdge1 = new RoadEdge(road, to, from);
-                graph.setEdgeWeight(roadEdge1, roadEdge1.road.getLen() / roadEdge1.road.getTopSpeed());
+                setEdgeWeight(roadEdge1, roadEdge1.road.getLen() / roadEdge1.road.getTopSpeed());
                 graph.addEdge(to, from, roadEdge1);
             }
         });
+        buildRouting();
     }
 
     public void updateGraphEdge() {
@@ -126,15 +155,26 @@ public class TrafficMap {
             CrossRoads from = crossMap.get(road.getStart());
             CrossRoads to = crossMap.get(road.getEnd());
             RoadEdge roadEdge = graph.getEdge(from, to);
-            graph.setEdgeWeight(roadEdge, roadEdge.getWeight(graph.getEdgeWeight(roadEdge)));
+            setEdgeWeight(roadEdge, roadEdge.getWeight(graph.getEdgeWeight(roadEdge)));
             if (road.isBidirectional()) {
                 RoadEdge roadEdge1 = graph.getEdge(to, from);
-                graph.setEdgeWeight(roadEdge1, roadEdge1.getWeight(graph.getEdgeWeight(roadEdge1)));
+                setEdgeWeight(roadEdge1, roadEdge1.getWeight(graph.getEdgeWeight(roadEdge1)));
             }
         });
     }
 
 
+    // 车辆起点到终点的最短路径，边的下标按顺序写入 pathBuffer，返回边数。默认的斐波那契堆、Dial 桶队列和按起点共用的搜索
+    // 选出的路径都与 JGraphT 的 DijkstraShortestPath 相同；打开按终点缓存的最短路径树时只保证路径长度相同
+    public int shortestPath(Car car) {
+        int length = routing.shortestPath(car.getFromIndex(), car.getToIndex(), pathBuffer);
+        if (length < 0) {
+            System.err.println("TrafficMap#shortestPath: 车辆 " + car.getId() + " 的终点不可达");
+            return 0;
+        }
+        return length;
+    }
+
     public GraphPath shortestDistancePath(Graph graphToCompute, int from, int to) {
         return DijkstraShortestPath.findPathBetween(graphToCompute, crossMap.get(from), crossMap.get(to));
     }
@@ -149,6 +189,14 @@ public class TrafficMap {
         });
     }
 
+    // 路径是 shortestPath 写入 pathBuffer 的前 length 条边
+    public void setCarPath(Car car, int length) {
+        car.getPath().clear();
+        for (int k = 0; k < length; k++) {
+            car.addPath(routing.getEdge(pathBuffer[k]).road.getId());
+        }
+    }
+
 
     public Long scheduleTest2(int carFlowLimit) {
         scheduler.reset();
@@ -187,11 +235,11 @@ public class TrafficMap {
                 if (count >= carFlowLimit)
                     break;
 
-                GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                int pathLength = shortestPath(car);
 
                 boolean hasBusyPath = false;
-                for (Object edge : path.getEdgeList()) {
-                    if (((RoadEdge) edge).calculateLoad() > 0.8) {
+                for (int k = 0; k < pathLength; k++) {
+                    if (routing.getEdge(pathBuffer[k]).calculateLoad() > 0.8) {
                         hasBusyPath = true;
                         break;
                     }
@@ -200,7 +248,7 @@ public class TrafficMap {
                     break;
                 }
 
-                setCarPath(car, path);
+                setCarPath(car, pathLength);
                 car.setStartTime(time);
                 scheduler.addToGarage(car);
                 iterator.remove();
@@ -282,7 +330,7 @@ public class TrafficMap {
                         continue;
 
 
-                    GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                    int pathLength = shortestPath(car);
 
                     // 计算每一时间单位最忙的路
                     car.getPath().forEach(road -> {
@@ -295,8 +343,8 @@ public class TrafficMap {
                     });
 
                     boolean hasBusyPath = false;
-                    for (Object edge : path.getEdgeList()) {
-                        if (((RoadEdge) edge).calculateLoad() > busyPathThreshold) {
+                    for (int k = 0; k < pathLength; k++) {
+                        if (routing.getEdge(pathBuffer[k]).calculateLoad() > busyPathThreshold) {
                             hasBusyPath = true;
                             break;
                         }
@@ -305,7 +353,7 @@ public class TrafficMap {
                         continue;
                     }
 
-                    setCarPath(car, path);
+                    setCarPath(car, pathLength);
                     car.setStartTime(time);
                     scheduler.addToGarage(car);
                     carList.remove(car);
@@ -343,10 +391,10 @@ public class TrafficMap {
             CrossRoads from = crossMap.get(road.getStart());
             CrossRoads to = crossMap.get(road.getEnd());
             RoadEdge edge = graph.getEdge(from, to);
-            graph.setEdgeWeight(edge, road.getLen() * 2);
+            setEdgeWeight(edge, road.getLen() * 2);
             if (road.isBidirectional()) {
                 RoadEdge opposeEdge = graph.getEdge(to, from);
-                graph.setEdgeWeight(opposeEdge, road.getLen() * 2);
+                setEdgeWeight(opposeEdge, road.getLen() * 2);
             }
         }
 
@@ -372,21 +420,16 @@ public class TrafficMap {
 
         System.out.println("Rollback to " + rollbackToTime);
         scheduler.rollback(rollbackToTime);
-        cars.forEach((carId, car) -> {
-            if (car.getStartTime() != -1L) {
-                scheduler.addToGarage(car);
-            }
-        });
         updateGraphEdge();
-        while (Scheduler.systemScheduleTime != rollbackToTime) {
+        while (scheduler.getSystemScheduleTime() != rollbackToTime) {
             if (!scheduler.step()) {
                 System.err.println("Deadlock again !!! Unable to recover from deadlock");
                 return -1L;
             }
         }
-        System.out.println("Rollback finished ! Rollback to " + Scheduler.systemScheduleTime);
+        System.out.println("Rollback finished ! Rollback to " + scheduler.getSystemScheduleTime());
         scheduler.printCarStates();
-        return Scheduler.systemScheduleTime;
+        return scheduler.getSystemScheduleTime();
     }
 
     public Long scheduleTest1(int carFlow1, double threshold1, int carFlow2, double threshold2) {
@@ -455,7 +498,7 @@ public class TrafficMap {
                 }
                 rollbackThrottleCount--;
             }
-            if (carOnRoadLimit != -1 && Scheduler.carStateCounter.get(CarState.END) > carOnRoadLimit) {
+            if (carOnRoadLimit != -1 && scheduler.getContext().getCarStateCount(CarState.END) > carOnRoadLimit) {
                 carFlowLimit = 15;
                 busyPathThreshold = 0.4;
             }
@@ -479,11 +522,11 @@ public class TrafficMap {
                     if (carPlanTime.get(car.getId()) > time)
                         continue;
 
-                    GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                    int pathLength = shortestPath(car);
 
                     int busyPathCount = 0;
-                    for (Object edge : path.getEdgeList()) {
-                        if (((RoadEdge) edge).calculateLoad() > busyPathThreshold) {
+                    for (int k = 0; k < pathLength; k++) {
+                        if (routing.getEdge(pathBuffer[k]).calculateLoad() > busyPathThreshold) {
                             busyPathCount++;
                         }
                     }
@@ -492,7 +535,7 @@ public class TrafficMap {
                         continue;
                     }
 
-                    setCarPath(car, path);
+                    setCarPath(car, pathLength);
                     car.setStartTime(time);
                     scheduler.addToGarage(car);
                     carList.remove(car);
@@ -501,7 +544,7 @@ public class TrafficMap {
                 }
 
             }
-            int maxCarOnRoad = Scheduler.carStateCounter.get(CarState.END);
+            int maxCarOnRoad = scheduler.getContext().getCarStateCount(CarState.END);
             if (!scheduler.step()) {
                 System.err.println("Deadlock happened, start rollback");
                 //设置路上车流阀值
@@ -521,7 +564,7 @@ public class TrafficMap {
                 if (carList.size() != 0)
                     haveCarLeft = true;
             }
-            if (Scheduler.carStateCounter.get(CarState.END) != 0)
+            if (scheduler.getContext().getCarStateCount(CarState.END) != 0)
                 haveCarLeft = true;
         }
 
@@ -596,7 +639,7 @@ public class TrafficMap {
                 }
                 rollbackThrottleCount--;
             }
-            if (carOnRoadLimit != -1 && Scheduler.carStateCounter.get(CarState.END) > carOnRoadLimit) {
+            if (carOnRoadLimit != -1 && scheduler.getContext().getCarStateCount(CarState.END) > carOnRoadLimit) {
                 carFlowLimit = 15;
                 busyPathThreshold = 0.3;
             }
@@ -619,11 +662,11 @@ public class TrafficMap {
                     if (carPlanTime.get(car.getId()) > time)
                         continue;
 
-                    GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                    int pathLength = shortestPath(car);
 
                     boolean hasBusyPath = false;
-                    for (Object edge : path.getEdgeList()) {
-                        if (((RoadEdge) edge).calculateLoad() > busyPathThreshold) {
+                    for (int k = 0; k < pathLength; k++) {
+                        if (routing.getEdge(pathBuffer[k]).calculateLoad() > busyPathThreshold) {
                             hasBusyPath = true;
                             break;
                         }
@@ -633,7 +676,7 @@ public class TrafficMap {
                         continue;
                     }
 
-                    setCarPath(car, path);
+                    setCarPath(car, pathLength);
                     car.setStartTime(time);
                     scheduler.addToGarage(car);
                     carList.remove(car);
@@ -645,7 +688,7 @@ public class TrafficMap {
 
             if (!scheduler.step()) {
                 System.err.println("Deadlock happened, start rollback");
-                carOnRoadLimit = Scheduler.carStateCounter.get(CarState.END) + 200;
+                carOnRoadLimit = scheduler.getContext().getCarStateCount(CarState.END) + 200;
                 time = autoRollback();
                 if (time < 0L)
                     return -1L;
@@ -661,7 +704,7 @@ public class TrafficMap {
                 if (carList.size() != 0)
                     haveCarLeft = true;
             }
-            if (Scheduler.carStateCounter.get(CarState.END) != 0)
+            if (scheduler.getContext().getCarStateCount(CarState.END) != 0)
                 haveCarLeft = true;
         }
 
@@ -739,7 +782,7 @@ public class TrafficMap {
                 }
                 rollbackThrottleCount--;
             }
-            if (carOnRoadLimit != -1 && Scheduler.carStateCounter.get(CarState.END) > carOnRoadLimit) {
+            if (carOnRoadLimit != -1 && scheduler.getContext().getCarStateCount(CarState.END) > carOnRoadLimit) {
                 carFlowLimit = 15;
                 busyPathThreshold = 0.3;
             }
@@ -757,11 +800,11 @@ public class TrafficMap {
                 if (carPlanTime.get(car.getId()) > time)
                     continue;
 
-                GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                int pathLength = shortestPath(car);
 
                 boolean hasBusyPath = false;
-                for (Object edge : path.getEdgeList()) {
-                    if (((RoadEdge) edge).calculateLoad() > busyPathThreshold) {
+                for (int k = 0; k < pathLength; k++) {
+                    if (routing.getEdge(pathBuffer[k]).calculateLoad() > busyPathThreshold) {
                         hasBusyPath = true;
                         break;
                     }
@@ -770,14 +813,14 @@ public class TrafficMap {
                     continue;
                 }
 
-                setCarPath(car, path);
+                setCarPath(car, pathLength);
                 car.setStartTime(time);
                 scheduler.addToGarage(car);
                 carIterator.remove();
                 count++;
             }
 
-            int carOnRoadCount = Scheduler.carStateCounter.get(CarState.END);
+            int carOnRoadCount = scheduler.getContext().getCarStateCount(CarState.END);
             if (!scheduler.step()) {
                 System.err.println("Deadlock happened, start rollback");
 //                System.exit(-1);
@@ -852,7 +895,7 @@ public class TrafficMap {
                 if (count >= carFlowLimit)
                     break;
 
-                GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                int pathLength = shortestPath(car);
 
                 // 计算每一时间单位最忙的路
                 car.getPath().forEach(road -> {
@@ -864,7 +907,7 @@ public class TrafficMap {
                     }
                 });
 
-                setCarPath(car, path);
+                setCarPath(car, pathLength);
                 car.setStartTime(time);
                 scheduler.addToGarage(car);
                 carList.remove(car);
@@ -899,14 +942,14 @@ public class TrafficMap {
             CrossRoads from = crossMap.get(road.getStart());
             CrossRoads to = crossMap.get(road.getEnd());
             RoadEdge edge = graph.getEdge(from, to);
-            graph.setEdgeWeight(edge, road.getLen() * 2);
+            setEdgeWeight(edge, road.getLen() * 2);
             if (road.isBidirectional()) {
                 RoadEdge opposeEdge = graph.getEdge(to, from);
-                graph.setEdgeWeight(opposeEdge, road.getLen() * 2);
+                setEdgeWeight(opposeEdge, road.getLen() * 2);
             }
         }
 
-        return Scheduler.systemScheduleTime;
+        return scheduler.getSystemScheduleTime();
     }
 
     public long preSchedule2(int carFlowLimit) {
@@ -952,7 +995,7 @@ public class TrafficMap {
                     if (count >= carFlowLimit)
                         break;
 
-                    GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                    int pathLength = shortestPath(car);
 
                     // 计算每一时间单位最忙的路
                     car.getPath().forEach(road -> {
@@ -964,7 +1007,7 @@ public class TrafficMap {
                         }
                     });
 
-                    setCarPath(car, path);
+                    setCarPath(car, pathLength);
                     car.setStartTime(time);
                     scheduler.addToGarage(car);
                     carList.remove(car);
@@ -1000,14 +1043,14 @@ public class TrafficMap {
             CrossRoads from = crossMap.get(road.getStart());
             CrossRoads to = crossMap.get(road.getEnd());
             RoadEdge edge = graph.getEdge(from, to);
-            graph.setEdgeWeight(edge, road.getLen() * 2);
+            setEdgeWeight(edge, road.getLen() * 2);
             if (road.isBidirectional()) {
                 RoadEdge opposeEdge = graph.getEdge(to, from);
-                graph.setEdgeWeight(opposeEdge, road.getLen() * 2);
+                setEdgeWeight(opposeEdge, road.getLen() * 2);
             }
         }
 
-        return Scheduler.systemScheduleTime;
+        return scheduler.getSystemScheduleTime();
     }
 
     public long preSchedule3(int carFlowLimit) {
@@ -1044,7 +1087,7 @@ public class TrafficMap {
                 if (car.getPlanTime() > time)
                     continue;
 
-                GraphPath path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+                int pathLength = shortestPath(car);
 
 
                 // 计算每一时间单位最忙的路
@@ -1057,7 +1100,7 @@ public class TrafficMap {
                     }
                 });
 
-                setCarPath(car, path);
+                setCarPath(car, pathLength);
                 car.setStartTime(time);
                 scheduler.addToGarage(car);
                 carIterator.remove();
@@ -1089,14 +1132,14 @@ public class TrafficMap {
             CrossRoads from = crossMap.get(road.getStart());
             CrossRoads to = crossMap.get(road.getEnd());
             RoadEdge edge = graph.getEdge(from, to);
-            graph.setEdgeWeight(edge, road.getLen() * 2.0);
+            setEdgeWeight(edge, road.getLen() * 2.0);
             if (road.isBidirectional()) {
                 RoadEdge opposeEdge = graph.getEdge(to, from);
-                graph.setEdgeWeight(opposeEdge, road.getLen() * 2.0);
+                setEdgeWeight(opposeEdge, road.getLen() * 2.0);
             }
         }
 
-        return Scheduler.systemScheduleTime;
+        return scheduler.getSystemScheduleTime();
     }
 
 
@@ -1145,10 +1188,11 @@ public class TrafficMap {
 
         while (!priorityQueue.isEmpty()) {
             Car car = priorityQueue.remove();
-            GraphPath<CrossRoads, RoadEdge> path = shortestDistancePath(graph, car.getFrom(), car.getTo());
+            int pathLength = shortestPath(car);
 
             double directionSum = 0;
-            for (RoadEdge roadEdge : path.getEdgeList()) {
+            for (int k = 0; k < pathLength; k++) {
+                RoadEdge roadEdge = routing.getEdge(pathBuffer[k]);
                 CrossRoads.RoadPosition roadPosition = roadEdge.getSource().getRoadDirection().get(roadEdge.road.getId());
                 if (roadPosition == CrossRoads.RoadPosition.NORTH && direction == 1 || direction == 3) {
                     directionSum += roadEdge.road.getLen();
@@ -1200,7 +1244,7 @@ public class TrafficMap {
         return cars;
     }
 
-    public Graph getGraph() {
+    public Graph<CrossRoads, RoadEdge> getGraph() {
         return graph;
     }
 
@@ -1208,6 +1252,40 @@ public class TrafficMap {
         return scheduler;
     }
 
+    public RoutingGraph getRouting() {
+        return routing;
+    }
+
+    public boolean isDialRouting() {
+        return dialRouting;
+    }
+
+    public void setDialRouting(boolean dialRouting) {
+        this.dialRouting = dialRouting;
+        if (routing != null)
+            routing.setDial(dialRouting);
+    }
+
+    public boolean isTreeRouting() {
+        return treeRouting;
+    }
+
+    public void setTreeRouting(boolean treeRouting) {
+        this.treeRouting = treeRouting;
+        if (routing != null)
+            routing.setTreeCache(treeRouting);
+    }
+
+    public boolean isBatchRouting() {
+        return batchRouting;
+    }
+
+    public void setBatchRouting(boolean batchRouting) {
+        this.batchRouting = batchRouting;
+        if (routing != null)
+            routing.setBatch(batchRouting);
+    }
+
     public HashMap<Integer, Road> getRoads() {
         return roads;
     }
@@ -0,0 +1,87 @@
+package com.huawei;
+
+import java.util.ArrayList;
+
+// 一个行驶方向上等待过路口的车：每条车道最前面且处于 WAIT 状态的车。
+// 车道头车发生变化时由车道通知，只重新检查该车道；队首按 priorityLaneIdComparator 取最靠前的车并缓存
+public class WaitingQueue {
+
+    private final Lane[] lanes;
+    // heads[i] 是第 i 条车道上等待的头车，没有则为 null
+    private final Car[] heads;
+    private final boolean[] laneChanged;
+    private boolean anyLaneChanged;
+
+    // heads 中队首的下标，-1 表示没有等待的车
+    private int first = -1;
+    private boolean firstValid = false;
+
+    public WaitingQueue(Lane[] lanes) {
+        this.lanes = lanes;
+        this.heads = new Car[lanes.length];
+        this.laneChanged = new boolean[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].setWaitingQueue(this, i);
+        }
+        markAllChanged();
+    }
+
+    // 第 slot 条车道的头车或头车状态可能发生了变化
+    public void laneChanged(int slot) {
+        laneChanged[slot] = true;
+        anyLaneChanged = true;
+        firstValid = false;
+    }
+
+    public void markAllChanged() {
+        for (int i = 0; i < lanes.length; i++) {
+            laneChanged[i] = true;
+        }
+        anyLaneChanged = true;
+        firstValid = false;
+    }
+
+    private void refresh() {
+        if (anyLaneChanged) {
+            for (int i = 0; i < lanes.length; i++) {
+                if (laneChanged[i]) {
+                    Car car = lanes[i].getFirstCar();
+                    heads[i] = car != null && car.getState() == CarState.WAIT ? car : null;
+                    laneChanged[i] = false;
+                }
+            }
+            anyLaneChanged = false;
+        }
+        if (!firstValid) {
+            // 车道号各不相同，不会出现相等的情况
+            first = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (first == -1 || Car.priorityLaneIdComparator.compare(heads[i], heads[first]) < 0))
+                    first = i;
+            }
+            firstValid = true;
+        }
+    }
+
+    // 最先过路口的等待车辆，没有则返回 null
+    public Car peek() {
+        refresh();
+        return first == -1 ? null : heads[first];
+    }
+
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    // 按过路口顺序排列的等待车辆
+    public ArrayList<Car> toList() {
+        refresh();
+        ArrayList<Car> list = new ArrayList<>(heads.length);
+        for (Car car : heads) {
+            if (car != null)
+                list.add(car);
+        }
+        list.sort(Car.priorityLaneIdComparator);
+        return list;
+    }
+}